@@ -0,0 +1,110 @@
+package dcapture.h2.benchmark;
+
+import dcapture.h2.service.H2BackupWriter;
+import dcapture.h2.service.H2IoThrottle;
+import dcapture.h2.service.H2ParallelZipOutput;
+import org.h2.tools.Backup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BackupBenchmark {
+    @Param({"32"})
+    public int sizeMb;
+    @Param({"4"})
+    public int workers;
+    private Path tenantPath, outputPath;
+    private ExecutorService moduleExecutor, compressExecutor;
+    private final H2IoThrottle throttle = new H2IoThrottle(0, 0, 8, 20);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tenantPath = SyntheticDatabase.createTenant("bench-backup", sizeMb);
+        outputPath = Files.createTempDirectory("bench-backup-out");
+        moduleExecutor = Executors.newFixedThreadPool(workers);
+        compressExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        moduleExecutor.shutdownNow();
+        compressExecutor.shutdownNow();
+        SyntheticDatabase.delete(tenantPath);
+        SyntheticDatabase.delete(outputPath);
+    }
+
+    @Benchmark
+    public long singleBackup() throws Exception {
+        Path file = outputPath.resolve("tenant.zip");
+        Backup.execute(file.toString(), tenantPath.toString(), null, true);
+        return Files.size(file);
+    }
+
+    @Benchmark
+    public long moduleBackup() throws Exception {
+        List<Future<Long>> futureList = new ArrayList<>();
+        for (String module : SyntheticDatabase.MODULES) {
+            futureList.add(moduleExecutor.submit(() -> {
+                Path file = outputPath.resolve(module + ".zip");
+                Backup.execute(file.toString(), tenantPath.toString(), module, true);
+                return Files.size(file);
+            }));
+        }
+        return sum(futureList);
+    }
+
+    @Benchmark
+    public long moduleParallelZip() throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Future<Long>> futureList = new ArrayList<>();
+        for (String module : SyntheticDatabase.MODULES) {
+            futureList.add(moduleExecutor.submit(() -> {
+                Path file = outputPath.resolve(module + ".zip");
+                H2ParallelZipOutput zipOutput = new H2ParallelZipOutput(new BufferedOutputStream(
+                        Files.newOutputStream(file), 64 * 1024), compressExecutor, threads,
+                        Deflater.DEFAULT_COMPRESSION, 128 * 1024);
+                try (H2BackupWriter writer = new H2BackupWriter(zipOutput, throttle)) {
+                    writer.writeOffline(tenantPath.toString(), module);
+                    writer.finish();
+                }
+                return Files.size(file);
+            }));
+        }
+        return sum(futureList);
+    }
+
+    private static long sum(List<Future<Long>> futureList) throws Exception {
+        long size = 0;
+        for (Future<Long> future : futureList) {
+            size += future.get();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,30 @@
+package dcapture.h2.benchmark;
+
+import dcapture.h2.service.H2BackupWriter;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class BenchmarkMain {
+
+    public static void main(String... args) throws Exception {
+        String version = H2BackupWriter.class.getPackage().getImplementationVersion();
+        if (version == null) {
+            version = "dev";
+        }
+        Path resultPath = Paths.get(System.getProperty("benchmark.result", "jmh-result-" + version + ".json"));
+        if (resultPath.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(resultPath.toAbsolutePath().getParent());
+        }
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON).result(resultPath.toString()).build();
+        new Runner(options).run();
+        System.out.println("Benchmark results : " + resultPath.toAbsolutePath());
+    }
+}
@@ -0,0 +1,97 @@
+package dcapture.h2.benchmark;
+
+import dcapture.h2.service.H2ParallelZipOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"32"})
+    public int sizeMb;
+    @Param({"1", "6", "9"})
+    public int level;
+    @Param({"1", "4"})
+    public int threads;
+    @Param({"128"})
+    public int blockKb;
+    private Path tenantPath, file;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tenantPath = Files.createTempDirectory("bench-compress");
+        SyntheticDatabase.createModule(tenantPath, "shared", sizeMb * 1024L * 1024L);
+        file = tenantPath.resolve("shared.mv.db");
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        SyntheticDatabase.delete(tenantPath);
+    }
+
+    @Benchmark
+    public long zipOutputStream() throws Exception {
+        CountingStream countingStream = new CountingStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(countingStream);
+             InputStream inputStream = Files.newInputStream(file)) {
+            zipOutputStream.setLevel(level);
+            zipOutputStream.putNextEntry(new ZipEntry("shared.mv.db"));
+            inputStream.transferTo(zipOutputStream);
+            zipOutputStream.closeEntry();
+        }
+        return countingStream.count;
+    }
+
+    @Benchmark
+    public long parallelZipOutput() throws Exception {
+        CountingStream countingStream = new CountingStream();
+        try (H2ParallelZipOutput zipOutput = new H2ParallelZipOutput(countingStream, executor, threads, level,
+                blockKb * 1024);
+             InputStream inputStream = Files.newInputStream(file)) {
+            zipOutput.writeEntry("shared.mv.db", inputStream, Files.size(file));
+        }
+        return countingStream.count;
+    }
+
+    private static class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int data) {
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package dcapture.h2.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DownloadBenchmark {
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+    @Param({"64"})
+    public int sizeMb;
+    private Path directory, file, sink;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("bench-download");
+        file = directory.resolve("shared.zip");
+        sink = directory.resolve("sink.bin");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            for (int index = 0; index < sizeMb; index++) {
+                random.nextBytes(block);
+                outputStream.write(block);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticDatabase.delete(directory);
+    }
+
+    @Benchmark
+    public long streamCopy() throws Exception {
+        long count = 0;
+        try (FileInputStream inputStream = new FileInputStream(file.toFile());
+             OutputStream outputStream = new FileOutputStream(sink.toFile())) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
+                count += length;
+            }
+            outputStream.flush();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long channelCopy() throws Exception {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+             OutputStream outputStream = new FileOutputStream(sink.toFile())) {
+            return transfer(fileChannel, Channels.newChannel(outputStream));
+        }
+    }
+
+    @Benchmark
+    public long zeroCopy() throws Exception {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel sinkChannel = FileChannel.open(sink, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transfer(fileChannel, sinkChannel);
+        }
+    }
+
+    private static long transfer(FileChannel fileChannel, WritableByteChannel outputChannel) throws Exception {
+        long position = 0, remaining = fileChannel.size();
+        while (remaining > 0) {
+            long transferred = fileChannel.transferTo(position, Math.min(remaining, TRANSFER_SIZE), outputChannel);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,96 @@
+package dcapture.h2.benchmark;
+
+import org.h2.tools.Backup;
+import org.h2.tools.Restore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class RestoreBenchmark {
+    @Param({"32"})
+    public int sizeMb;
+    @Param({"4"})
+    public int workers;
+    private Path tenantPath, backupPath, restorePath;
+    private ExecutorService moduleExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tenantPath = SyntheticDatabase.createTenant("bench-restore", sizeMb);
+        backupPath = Files.createTempDirectory("bench-restore-zip");
+        for (String module : SyntheticDatabase.MODULES) {
+            Backup.execute(backupPath.resolve(module + ".zip").toString(), tenantPath.toString(), module, true);
+        }
+        moduleExecutor = Executors.newFixedThreadPool(workers);
+    }
+
+    @Setup(Level.Invocation)
+    public void createTarget() throws Exception {
+        restorePath = Files.createTempDirectory("bench-restore-out");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() throws Exception {
+        SyntheticDatabase.delete(restorePath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        moduleExecutor.shutdownNow();
+        SyntheticDatabase.delete(tenantPath);
+        SyntheticDatabase.delete(backupPath);
+    }
+
+    @Benchmark
+    public long restoreSequential() throws Exception {
+        for (String module : SyntheticDatabase.MODULES) {
+            restore(module);
+        }
+        return SyntheticDatabase.size(restorePath);
+    }
+
+    @Benchmark
+    public long restoreParallel() throws Exception {
+        List<Future<?>> futureList = new ArrayList<>();
+        for (String module : SyntheticDatabase.MODULES) {
+            futureList.add(moduleExecutor.submit(() -> {
+                restore(module);
+                return null;
+            }));
+        }
+        for (Future<?> future : futureList) {
+            future.get();
+        }
+        return SyntheticDatabase.size(restorePath);
+    }
+
+    private void restore(String module) throws Exception {
+        Restore.main("-dir", restorePath.toString(), "-file", backupPath.resolve(module + ".zip").toString(),
+                "-db", module, "-quiet");
+    }
+}
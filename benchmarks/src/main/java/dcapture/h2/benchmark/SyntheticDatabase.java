@@ -0,0 +1,69 @@
+package dcapture.h2.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SyntheticDatabase {
+    public static final String USER = "sa", PASSWORD = "Teamwork";
+    public static final String[] MODULES = {"shared", "cashbook", "materials", "project", "inventory", "purchase",
+            "sales"};
+    private static final int BATCH_ROWS = 20_000;
+
+    public static Path createTenant(String prefix, int sizeMb) throws IOException, SQLException {
+        Path directory = Files.createTempDirectory(prefix);
+        long moduleBytes = Math.max(1, sizeMb) * 1024L * 1024L / MODULES.length;
+        for (String module : MODULES) {
+            createModule(directory, module, moduleBytes);
+        }
+        return directory;
+    }
+
+    public static void createModule(Path directory, String module, long targetBytes) throws SQLException {
+        Path file = directory.resolve(module + ".mv.db");
+        String url = "jdbc:h2:" + directory.resolve(module).toAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(url, USER, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE LEDGER(ID BIGINT PRIMARY KEY, ACCOUNT INT, AMOUNT DECIMAL(18, 2), "
+                    + "NARRATION VARCHAR(512))");
+            long next = 1;
+            while (file.toFile().length() < targetBytes) {
+                statement.execute("INSERT INTO LEDGER SELECT X, MOD(X, 977), RAND() * 100000, "
+                        + "CONCAT(RANDOM_UUID(), ' ledger entry for account ', MOD(X, 977), SPACE(MOD(X, 64))) "
+                        + "FROM SYSTEM_RANGE(" + next + ", " + (next + BATCH_ROWS - 1) + ")");
+                next += BATCH_ROWS;
+                statement.execute("CHECKPOINT SYNC");
+            }
+        }
+    }
+
+    public static long size(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            long size = 0;
+            for (Path path : stream.collect(Collectors.toList())) {
+                size += Files.size(path);
+            }
+            return size;
+        }
+    }
+
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            List<Path> pathList = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : pathList) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -2,13 +2,18 @@ package dcapture.h2.embedded;
 
 import dcapture.h2.service.H2BackupServlet;
 import dcapture.h2.service.H2ContextListener;
+import dcapture.h2.service.H2JobServlet;
+import dcapture.h2.service.H2MetricsServlet;
 import dcapture.h2.service.H2RestoreServlet;
 import dcapture.h2.service.H2ServiceServlet;
+import jakarta.servlet.ServletContext;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.Graceful;
 import org.eclipse.jetty.util.resource.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,11 +24,16 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class EntryPoint {
     private static final Logger logger = LoggerFactory.getLogger(EntryPoint.class);
     private static final String RESOURCE_PATH = "/Users/ramesh/Documents/workspace/dcapture-h2/webapps";
+    private static final String BUILD_RESOURCE_PATH = "/Users/ramesh/Documents/workspace/dcapture-h2/target/webapps";
 
     private void addInitParam(ServletContextHandler context) {
         context.setInitParameter("org.eclipse.jetty.servlet.Default.dirAllowed", "false");
@@ -31,19 +41,64 @@ public class EntryPoint {
         context.setInitParameter("key", "f834227e-a3a8-4dd2-a5ce-8ebb84b9b1ee");
         context.setInitParameter("password", "3d3dd5957b8be3e36366431a0595c3ca");
         context.setInitParameter("database.data", "/Users/ramesh/data");
+        context.setInitParameter("database.volumes", "");
+        context.setInitParameter("volume.min.free", "1024");
         context.setInitParameter("database.backup", "/Users/ramesh/backup-sample");
+        context.setInitParameter("backup.workers", "4");
+        context.setInitParameter("backup.compress.threads", "4");
+        context.setInitParameter("backup.compress.level", "6");
+        context.setInitParameter("backup.max.concurrent", "2");
+        context.setInitParameter("backup.schedule.jitter", "60");
+        context.setInitParameter("io.rate.business", "20480");
+        context.setInitParameter("io.rate.offhours", "0");
+        context.setInitParameter("compact.budget", "600");
+        context.setInitParameter("capture.enabled", "false");
+        context.setInitParameter("capture.flush", "1000");
+        context.setInitParameter("capture.batch", "5000");
+        context.setInitParameter("capture.retention", "35");
+        context.setInitParameter("job.workers", "2");
+        context.setInitParameter("job.queue", "50");
+        context.setInitParameter("pool.max.connections", "8");
+        context.setInitParameter("pool.idle.timeout", "300");
+        context.setInitParameter("tenant.hot", "");
+        context.setInitParameter("tenant.idle.timeout", "1800");
+        context.setInitParameter("tenant.max.open", "0");
+        context.setInitParameter("tenant.sweep.interval", "60");
+        context.setInitParameter("tenant.warm.rows", "10000");
+        context.setInitParameter("memory.cache.budget", "0");
+        context.setInitParameter("memory.cache.min", "4");
+        context.setInitParameter("memory.interval", "60");
+        context.setInitParameter("health.interval", "10");
+        context.setInitParameter("health.timeout", "5");
+        context.setInitParameter("startup.scan", "true");
+        context.setInitParameter("startup.threads", "4");
+        context.setInitParameter("startup.warm.rows", "0");
+        context.setInitParameter("shutdown.timeout", "120");
+        context.setInitParameter("shutdown.threads", "4");
+        context.setInitParameter("provision.workers", "4");
     }
     private void start() throws Exception {
         Server server = new Server(H2ContextListener.SERVICE_PORT);
         ServletContextHandler servletContext = new ServletContextHandler(ServletContextHandler.SESSIONS);
 
-        servletContext.setBaseResource(Resource.newResource(Paths.get(RESOURCE_PATH)));
+        Path resourcePath = Paths.get(BUILD_RESOURCE_PATH);
+        if (!Files.isDirectory(resourcePath)) {
+            resourcePath = Paths.get(RESOURCE_PATH);
+        }
+        servletContext.setBaseResource(Resource.newResource(resourcePath));
         servletContext.addEventListener(new H2ContextListener());
         servletContext.setContextPath("/");
-        servletContext.insertHandler(new GzipHandler());
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setIncludedPaths("/database/*", "/backup/*", "/restore/*", "/job/*", "/metrics");
+        gzipHandler.setExcludedPaths("/backup/download/*", "/backup/export/*");
+        servletContext.insertHandler(gzipHandler);
         servletContext.setWelcomeFiles(new String[]{"index.html"});
         //
         ServletHolder defaultHolder = new ServletHolder(new DefaultServlet());
+        defaultHolder.setInitParameter("precompressed", "br=.br,gzip=.gz");
+        defaultHolder.setInitParameter("etags", "true");
+        defaultHolder.setInitParameter("dirAllowed", "false");
+        defaultHolder.setInitParameter("cacheControl", "no-cache");
         servletContext.addServlet(defaultHolder, "/*");
         ServletHolder refreshHolder = new ServletHolder(new H2ServiceServlet());
         servletContext.addServlet(refreshHolder, "/database/*");
@@ -51,12 +106,19 @@ public class EntryPoint {
         servletContext.addServlet(backupHolder, "/backup/*");
         ServletHolder restoreHolder = new ServletHolder(new H2RestoreServlet());
         servletContext.addServlet(restoreHolder, "/restore/*");
+        ServletHolder jobHolder = new ServletHolder(new H2JobServlet());
+        servletContext.addServlet(jobHolder, "/job/*");
+        ServletHolder metricsHolder = new ServletHolder(new H2MetricsServlet());
+        servletContext.addServlet(metricsHolder, "/metrics");
         addInitParam(servletContext);
-        server.setHandler(servletContext);
+        StatisticsHandler statisticsHandler = new StatisticsHandler();
+        statisticsHandler.setHandler(servletContext);
+        server.setHandler(statisticsHandler);
+        server.setStopTimeout(5000);
         servletContext.setAttribute(Server.class.getName(), server);
         logger.info("H2 jetty service port  :" + H2ContextListener.SERVICE_PORT);
         logger.info("H2 jetty shutdown port :" + H2ContextListener.SHUTDOWN_PORT);
-        Thread monitor = new H2JettyStopService(server);
+        Thread monitor = new H2JettyStopService(server, servletContext.getServletContext());
         monitor.start();
         server.start();
         server.join();
@@ -74,11 +136,13 @@ public class EntryPoint {
     private static class H2JettyStopService extends Thread {
         private final ServerSocket socket;
         private final Server server;
+        private final ServletContext context;
 
-        public H2JettyStopService(Server server) {
+        public H2JettyStopService(Server server, ServletContext context) {
             setDaemon(true);
             setName("H2JettyStopService");
             this.server = server;
+            this.context = context;
             try {
                 socket = new ServerSocket(H2ContextListener.SHUTDOWN_PORT, 1, InetAddress.getByName("127.0.0.1"));
             } catch(Exception e) {
@@ -96,7 +160,7 @@ public class EntryPoint {
                 logger.info(command);
                 outputStream.writeUTF(command);
                 outputStream.flush();
-                server.stop();
+                shutdown();
                 close(outputStream);
                 close(inputStream);
                 close(accept);
@@ -105,6 +169,21 @@ public class EntryPoint {
             }
         }
 
+        private void shutdown() throws Exception {
+            long startTime = System.currentTimeMillis();
+            long deadline = startTime + H2ContextListener.getInitParameter(context, "shutdown.timeout", 120) * 1000L;
+            try {
+                Graceful.shutdown(server).get(Math.max(1000L, deadline - startTime), TimeUnit.MILLISECONDS);
+                logger.info("H2 shutdown : new requests refused, open requests finished in "
+                        + (System.currentTimeMillis() - startTime) + " ms");
+            } catch (TimeoutException ex) {
+                logger.info("H2 shutdown : open requests still running, continuing.");
+            }
+            H2ContextListener.drainDatabaseService(context, deadline);
+            logger.info("H2 shutdown : drained in " + (System.currentTimeMillis() - startTime) + " ms, stopping.");
+            server.stop();
+        }
+
         private String getString(byte[] allBytes) {
             return allBytes == null ? "Unknown" : new String(allBytes, StandardCharsets.UTF_8);
         }
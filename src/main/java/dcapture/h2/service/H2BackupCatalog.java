@@ -0,0 +1,302 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class H2BackupCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(H2BackupCatalog.class);
+    private static final String MERGE_SQL = "MERGE INTO BACKUP_CATALOG(TENANT, MODULE, BACKUP_DATE, FILE_NAME, FORMAT, "
+            + "FILE_SIZE, DURATION, CHECKSUM, CREATED) KEY(TENANT, BACKUP_DATE, FILE_NAME) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private final Path backupRoot;
+    private final JdbcConnectionPool connectionPool;
+    private volatile boolean isRebuilt;
+
+    public H2BackupCatalog(Path backupRoot) throws SQLException {
+        this.backupRoot = backupRoot;
+        String url = "jdbc:h2:" + backupRoot.resolve("catalog").toAbsolutePath();
+        connectionPool = JdbcConnectionPool.create(url, H2ContextListener.DATABASE_USER,
+                H2ContextListener.DATABASE_PASSWORD);
+        try (Connection connection = connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS BACKUP_CATALOG(TENANT VARCHAR(128) NOT NULL, "
+                    + "MODULE VARCHAR(128) NOT NULL, BACKUP_DATE DATE NOT NULL, FILE_NAME VARCHAR(256) NOT NULL, "
+                    + "FORMAT VARCHAR(16), FILE_SIZE BIGINT, DURATION BIGINT, CHECKSUM VARCHAR(64), "
+                    + "CREATED TIMESTAMP, PRIMARY KEY(TENANT, BACKUP_DATE, FILE_NAME))");
+            statement.execute("CREATE INDEX IF NOT EXISTS BACKUP_CATALOG_DATE ON BACKUP_CATALOG(BACKUP_DATE)");
+        }
+    }
+
+    public static H2BackupCatalog get(ServletContext context) {
+        return (H2BackupCatalog) context.getAttribute(H2BackupCatalog.class.getName());
+    }
+
+    public void record(String tenant, String module, Path file, long duration, String checksum)
+            throws SQLException, IOException {
+        LocalDate date = parseDate(file.getParent().getFileName().toString());
+        if (date == null) {
+            throw new IOException("Backup file is not in a date folder : " + file);
+        }
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MERGE_SQL)) {
+            setEntry(statement, tenant, module, date, file, duration, checksum);
+            statement.executeUpdate();
+        }
+    }
+
+    public boolean isRebuilt() {
+        return isRebuilt;
+    }
+
+    public int rebuild() throws SQLException, IOException {
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        if (!Files.isDirectory(backupRoot)) {
+            isRebuilt = true;
+            return count;
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                count = rebuild(connection);
+                connection.commit();
+            } catch (SQLException | IOException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            isRebuilt = true;
+        }
+        logger.info("H2 backup catalog rebuilt, " + count + " new entries in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        return count;
+    }
+
+    private int rebuild(Connection connection) throws SQLException, IOException {
+        int count = 0;
+        List<String[]> knownList = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT TENANT, BACKUP_DATE, FILE_NAME FROM BACKUP_CATALOG")) {
+            while (resultSet.next()) {
+                knownList.add(new String[]{resultSet.getString(1), resultSet.getString(2), resultSet.getString(3)});
+            }
+        }
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM BACKUP_CATALOG WHERE TENANT = ? AND BACKUP_DATE = ? AND FILE_NAME = ?")) {
+            for (String[] known : knownList) {
+                if (!Files.exists(backupRoot.resolve(known[0]).resolve(known[1]).resolve(known[2]))) {
+                    delete.setString(1, known[0]);
+                    delete.setDate(2, Date.valueOf(known[1]));
+                    delete.setString(3, known[2]);
+                    delete.addBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+        try (PreparedStatement exists = connection.prepareStatement("SELECT 1 FROM BACKUP_CATALOG "
+                + "WHERE TENANT = ? AND BACKUP_DATE = ? AND FILE_NAME = ?");
+             PreparedStatement merge = connection.prepareStatement(MERGE_SQL);
+             DirectoryStream<Path> tenantStream = Files.newDirectoryStream(backupRoot, Files::isDirectory)) {
+            for (Path tenantPath : tenantStream) {
+                String tenant = tenantPath.getFileName().toString();
+                try (DirectoryStream<Path> dateStream = Files.newDirectoryStream(tenantPath, Files::isDirectory)) {
+                    for (Path datePath : dateStream) {
+                        LocalDate date = parseDate(datePath.getFileName().toString());
+                        if (date == null) {
+                            continue;
+                        }
+                        try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(datePath,
+                                H2BackupCatalog::isBackupFile)) {
+                            for (Path file : fileStream) {
+                                exists.setString(1, tenant);
+                                exists.setDate(2, Date.valueOf(date));
+                                exists.setString(3, file.getFileName().toString());
+                                try (ResultSet resultSet = exists.executeQuery()) {
+                                    if (resultSet.next()) {
+                                        continue;
+                                    }
+                                }
+                                setEntry(merge, tenant, getModule(file), date, file, -1,
+                                        H2BackupChecksum.readSha256(file));
+                                merge.addBatch();
+                                count += 1;
+                            }
+                        }
+                    }
+                }
+            }
+            merge.executeBatch();
+        }
+        return count;
+    }
+
+    public List<String> getFileList(String tenant, LocalDate date) throws SQLException {
+        List<String> fileList = new ArrayList<>();
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT FILE_NAME FROM BACKUP_CATALOG "
+                     + "WHERE TENANT = ? AND BACKUP_DATE = ? ORDER BY FILE_NAME")) {
+            statement.setString(1, tenant);
+            statement.setDate(2, Date.valueOf(date));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    fileList.add(resultSet.getString(1));
+                }
+            }
+        }
+        return fileList;
+    }
+
+    public static List<String> listBackupFiles(Path datePath) throws IOException {
+        List<String> fileList = new ArrayList<>();
+        if (!Files.isDirectory(datePath)) {
+            return fileList;
+        }
+        try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(datePath, H2BackupCatalog::isBackupFile)) {
+            for (Path file : fileStream) {
+                fileList.add(file.getFileName().toString());
+            }
+        }
+        Collections.sort(fileList);
+        return fileList;
+    }
+
+    public String query(String tenant, LocalDate from, LocalDate to, int offset, int limit) throws SQLException {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        List<Object> parameterList = new ArrayList<>();
+        if (tenant != null) {
+            where.append(" AND TENANT = ?");
+            parameterList.add(tenant);
+        }
+        if (from != null) {
+            where.append(" AND BACKUP_DATE >= ?");
+            parameterList.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            where.append(" AND BACKUP_DATE <= ?");
+            parameterList.add(Date.valueOf(to));
+        }
+        JsonBuilder builder = new JsonBuilder().beginObject();
+        try (Connection connection = connectionPool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM BACKUP_CATALOG" + where)) {
+                setParameters(statement, parameterList);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    builder.field("total", resultSet.getLong(1));
+                }
+            }
+            builder.field("offset", offset).field("limit", limit).name("items").beginArray();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT TENANT, MODULE, BACKUP_DATE, "
+                    + "FILE_NAME, FORMAT, FILE_SIZE, DURATION, CHECKSUM, CREATED FROM BACKUP_CATALOG" + where
+                    + " ORDER BY BACKUP_DATE DESC, TENANT, FILE_NAME OFFSET ? ROWS FETCH NEXT ? ROWS ONLY")) {
+                setParameters(statement, parameterList);
+                statement.setInt(parameterList.size() + 1, offset);
+                statement.setInt(parameterList.size() + 2, limit);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Timestamp created = resultSet.getTimestamp(9);
+                        builder.beginObject().field("tenant", resultSet.getString(1))
+                                .field("module", resultSet.getString(2))
+                                .field("date", resultSet.getDate(3).toString())
+                                .field("file", resultSet.getString(4)).field("format", resultSet.getString(5))
+                                .field("size", resultSet.getLong(6)).field("duration", resultSet.getLong(7))
+                                .field("checksum", resultSet.getString(8))
+                                .field("created", created == null ? null : created.toString()).endObject();
+                    }
+                }
+            }
+        }
+        return builder.endArray().endObject().toString();
+    }
+
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    public static String checksum(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (byte data : digest.digest()) {
+                builder.append(String.format("%02x", data));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    public static LocalDate parseDate(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isBackupFile(Path path) {
+        String name = path.getFileName().toString();
+        return Files.isRegularFile(path) && !name.endsWith(".online.zip")
+                && (name.endsWith(".zip") || name.endsWith(H2ChunkStore.MANIFEST_SUFFIX));
+    }
+
+    private static String getModule(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    private static String getFormat(Path file) {
+        return file.getFileName().toString().endsWith(H2ChunkStore.MANIFEST_SUFFIX) ? "incremental" : "zip";
+    }
+
+    private void setEntry(PreparedStatement statement, String tenant, String module, LocalDate date, Path file,
+                          long duration, String checksum) throws SQLException, IOException {
+        statement.setString(1, tenant);
+        statement.setString(2, module);
+        statement.setDate(3, Date.valueOf(date));
+        statement.setString(4, file.getFileName().toString());
+        statement.setString(5, getFormat(file));
+        statement.setLong(6, Files.size(file));
+        statement.setLong(7, duration);
+        statement.setString(8, checksum);
+        statement.setTimestamp(9, new Timestamp(Files.getLastModifiedTime(file).toMillis()));
+    }
+
+    private static void setParameters(PreparedStatement statement, List<Object> parameterList) throws SQLException {
+        for (int index = 0; index < parameterList.size(); index++) {
+            statement.setObject(index + 1, parameterList.get(index));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package dcapture.h2.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public class H2BackupChecksum {
+    public static final String SUFFIX = ".sha256";
+    private static final String HEADER = "# dcapture-h2 backup checksum";
+    private final List<Entry> entryList = new ArrayList<>();
+    private String fileName, sha256;
+    private long size;
+
+    public static ChecksumOutputStream wrap(OutputStream outputStream) {
+        return new ChecksumOutputStream(outputStream);
+    }
+
+    public static Path getChecksumPath(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public static H2BackupChecksum write(Path file, ChecksumOutputStream outputStream) throws IOException {
+        H2BackupChecksum checksum = new H2BackupChecksum();
+        checksum.fileName = file.getFileName().toString();
+        checksum.sha256 = outputStream.getSha256();
+        checksum.size = outputStream.getCount();
+        if (checksum.size != Files.size(file)) {
+            throw new IOException("Backup file size changed after write : " + file);
+        }
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    checksum.entryList.add(new Entry(entry.getName(), entry.getSize(), entry.getCrc()));
+                }
+            }
+        }
+        Path checksumPath = getChecksumPath(file);
+        Path tempPath = checksumPath.resolveSibling(checksumPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.write("sha256 " + checksum.sha256 + " " + checksum.size + " " + checksum.fileName);
+            writer.newLine();
+            for (Entry entry : checksum.entryList) {
+                writer.write("entry " + Long.toHexString(entry.crc) + " " + entry.size + " " + entry.name);
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, checksumPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return checksum;
+    }
+
+    public static H2BackupChecksum read(Path checksumPath) throws IOException {
+        H2BackupChecksum checksum = new H2BackupChecksum();
+        try (BufferedReader reader = Files.newBufferedReader(checksumPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 4);
+                try {
+                    if ("sha256".equals(parts[0]) && parts.length == 4) {
+                        checksum.sha256 = parts[1];
+                        checksum.size = Long.parseLong(parts[2]);
+                        checksum.fileName = parts[3];
+                    } else if ("entry".equals(parts[0]) && parts.length == 4) {
+                        checksum.entryList.add(new Entry(parts[3], Long.parseLong(parts[2]),
+                                Long.parseLong(parts[1], 16)));
+                    } else {
+                        throw new IOException("Invalid backup checksum " + checksumPath + " : " + line);
+                    }
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid backup checksum " + checksumPath + " : " + line, ex);
+                }
+            }
+        }
+        if (checksum.sha256 == null) {
+            throw new IOException("Invalid backup checksum " + checksumPath + " : sha256 line not found");
+        }
+        return checksum;
+    }
+
+    public static String readSha256(Path file) {
+        Path checksumPath = getChecksumPath(file);
+        if (!Files.exists(checksumPath)) {
+            return null;
+        }
+        try {
+            return read(checksumPath).sha256;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public static String verify(Path file, H2IoThrottle throttle) throws IOException {
+        Path checksumPath = getChecksumPath(file);
+        H2BackupChecksum expected = Files.exists(checksumPath) ? read(checksumPath) : null;
+        MessageDigest digest = getDigest();
+        List<Entry> entryList = new ArrayList<>();
+        long size;
+        String entryName = null;
+        try (DigestInputStream digestStream = new DigestInputStream(throttle.wrap(Files.newInputStream(file)), digest);
+             ZipInputStream zipStream = new ZipInputStream(digestStream)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipStream.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                entryName = zipEntry.getName();
+                long entrySize = zipStream.transferTo(OutputStream.nullOutputStream());
+                zipStream.closeEntry();
+                entryList.add(new Entry(zipEntry.getName(), entrySize, zipEntry.getCrc()));
+            }
+            digestStream.transferTo(OutputStream.nullOutputStream());
+            size = digestStream.count;
+        } catch (ZipException ex) {
+            throw new IOException("Backup zip corrupt : " + file.getFileName() + (entryName == null ? ""
+                    : "!" + entryName) + " " + ex.getMessage(), ex);
+        }
+        if (entryList.isEmpty()) {
+            throw new IOException("Backup zip has no entries : " + file.getFileName());
+        }
+        if (expected == null) {
+            return entryList.size() + " entries, zip CRC ok, " + size + " bytes (no checksum manifest)";
+        }
+        String sha256 = toHex(digest.digest());
+        if (expected.size != size || !expected.sha256.equals(sha256)) {
+            throw new IOException("Backup checksum mismatch : " + file.getFileName() + " expected " + expected.sha256
+                    + " (" + expected.size + " bytes), found " + sha256 + " (" + size + " bytes)");
+        }
+        if (expected.entryList.size() != entryList.size()) {
+            throw new IOException("Backup entry count mismatch : " + file.getFileName() + " expected "
+                    + expected.entryList.size() + ", found " + entryList.size());
+        }
+        for (int index = 0; index < entryList.size(); index++) {
+            Entry entry = entryList.get(index), other = expected.entryList.get(index);
+            if (!entry.name.equals(other.name) || entry.size != other.size || entry.crc != other.crc) {
+                throw new IOException("Backup entry mismatch : " + file.getFileName() + "!" + other.name);
+            }
+        }
+        return entryList.size() + " entries, sha256 ok, " + size + " bytes";
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte data : bytes) {
+            builder.append(Character.forDigit((data >> 4) & 0xF, 16)).append(Character.forDigit(data & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    public static class ChecksumOutputStream extends FilterOutputStream {
+        private final MessageDigest digest = getDigest();
+        private long count;
+
+        ChecksumOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int data) throws IOException {
+            out.write(data);
+            digest.update((byte) data);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            digest.update(data, offset, length);
+            count += length;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public String getSha256() {
+            return toHex(digest.digest());
+        }
+    }
+
+    private static class DigestInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        DigestInputStream(InputStream inputStream, MessageDigest digest) {
+            super(inputStream);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int data = super.read();
+            if (data >= 0) {
+                digest.update((byte) data);
+                count += 1;
+            }
+            return data;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = super.read(buffer, offset, length);
+            if (result > 0) {
+                digest.update(buffer, offset, result);
+                count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(1, length))];
+            long skipped = 0;
+            while (skipped < length) {
+                int result = read(buffer, 0, (int) Math.min(buffer.length, length - skipped));
+                if (result < 0) {
+                    break;
+                }
+                skipped += result;
+            }
+            return skipped;
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private final long size, crc;
+
+        Entry(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+}
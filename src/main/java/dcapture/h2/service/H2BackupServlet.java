@@ -1,29 +1,58 @@
 package dcapture.h2.service;
 
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.h2.tools.Backup;
+import org.h2.store.FileLister;
+import org.h2.tools.Restore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 public class H2BackupServlet extends MasterHttpServlet {
     private static final Logger logger = LoggerFactory.getLogger(H2BackupServlet.class);
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private ExecutorService moduleExecutor, compressExecutor;
+    private long onlineProbeMillis;
+    private int compressThreads, compressLevel, compressBlockSize;
+    private H2Metrics metrics;
+    private H2IoThrottle throttle;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String[] pathInfoArray = getPathInfoArray(req.getPathInfo());
+        if (1 == pathInfoArray.length && "catalog".equals(pathInfoArray[0])) {
+            showCatalog(req, resp, req.getParameter("tenant"));
+            return;
+        }
+        if (1 == pathInfoArray.length && "schedule".equals(pathInfoArray[0])) {
+            sendJson(resp, H2JobScheduler.get(getServletContext(), "backup").toJson());
+            return;
+        }
         if (2 != pathInfoArray.length) {
             sendResponse(resp, "Service not supported " + Arrays.toString(pathInfoArray));
             return;
@@ -34,78 +63,501 @@ public class H2BackupServlet extends MasterHttpServlet {
         boolean isSingleDatabase = "true".equalsIgnoreCase(tempText);
         if ("load-backup".equals(actionId)) {
             String date1 = req.getParameter("date");
-            showBackupList(resp, backupRoot, appsName, date1);
+            showBackupList(resp, Paths.get(getDirectory(backupRoot, appsName)), appsName, date1);
+        } else if ("catalog".equals(actionId)) {
+            showCatalog(req, resp, appsName);
         } else if ("download".equals(actionId)) {
             String path = getDirectory(backupRoot, appsName);
             String date2 = req.getParameter("date");
             String database = req.getParameter("db");
-            performDownload(resp, Paths.get(path), appsName, date2, database);
+            performDownload(req, resp, Paths.get(path), appsName, date2, database);
+        } else if ("export".equals(actionId)) {
+            boolean isOffLine = !"online".equals(req.getParameter("type"));
+            String database = req.getParameter("db");
+            int level = getCompressLevel(req);
+            performExport(resp, appsName, database, isSingleDatabase, isOffLine, level);
+        } else if ("verify".equals(actionId)) {
+            Path backupPath = Paths.get(getDirectory(backupRoot, appsName));
+            String date3 = req.getParameter("date");
+            boolean isOpen = "true".equalsIgnoreCase(req.getParameter("open"));
+            List<String> databaseList = isSingleDatabase ? List.of(appsName) : Arrays.asList(getDatabaseNames());
+            submitJob(resp, "verify", appsName, job -> performVerify(job, appsName, backupPath, date3,
+                    databaseList, isOpen));
+        } else if ("gc".equals(actionId)) {
+            Path backupPath = Paths.get(getDirectory(backupRoot, appsName));
+            submitJob(resp, "gc", appsName, job -> appsName + " : "
+                    + getChunkStore(backupRoot, appsName).collectGarbage(backupPath));
         } else if ("create".equals(actionId)) {
-            String databaseRoot = req.getServletContext().getInitParameter("database.data");
             String type = req.getParameter("type");
             boolean isOffLine = !"online".equals(type);
-            if (isSingleDatabase) {
-                performCreateBackup(resp, databaseRoot, backupRoot, appsName, isOffLine);
-            } else {
-                performCreateBackupByModule(resp, databaseRoot, backupRoot, appsName, isOffLine);
-            }
+            boolean isIncremental = "incremental".equals(req.getParameter("format"));
+            int level = getCompressLevel(req);
+            H2Job.Task task = job -> isSingleDatabase
+                    ? performCreateBackup(job, backupRoot, appsName, isOffLine, isIncremental, level)
+                    : performCreateBackupByModule(job, backupRoot, appsName, isOffLine, isIncremental, level);
+            submitJob(resp, H2JobScheduler.get(getServletContext(), "backup"), appsName, task);
         } else {
             sendResponse(resp, "Service request not valid " + actionId);
         }
     }
 
-    private void performCreateBackupByModule(HttpServletResponse resp, String databaseRoot, String backupRoot,
-                                             String appsName, boolean isOffLine) throws IOException {
-        if (isOffLine) {
-            Map<String, String> databaseMap = getDatabaseUrlByModules(appsName);
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        int workers = H2ContextListener.getInitParameter(getServletContext(), "backup.workers", getDatabaseNames().length);
+        moduleExecutor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "H2BackupWorker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        onlineProbeMillis = H2ContextListener.getInitParameter(getServletContext(), "backup.online.probe", 500);
+        metrics = H2Metrics.get(getServletContext());
+        throttle = H2IoThrottle.get(getServletContext());
+        compressThreads = Math.max(1, H2ContextListener.getInitParameter(getServletContext(),
+                "backup.compress.threads", Runtime.getRuntime().availableProcessors()));
+        compressLevel = H2ContextListener.getInitParameter(getServletContext(), "backup.compress.level",
+                Deflater.DEFAULT_COMPRESSION);
+        compressBlockSize = H2ContextListener.getInitParameter(getServletContext(), "backup.compress.block", 128) * 1024;
+        compressExecutor = Executors.newFixedThreadPool(compressThreads, runnable -> {
+            Thread thread = new Thread(runnable, "H2BackupCompress-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("H2 backup module workers : " + workers + ", compress threads : " + compressThreads);
+        String backupRoot = getServletContext().getInitParameter("database.backup");
+        boolean isScheduleOffLine = "offline".equals(getServletContext().getInitParameter("backup.schedule.type"));
+        H2JobScheduler.get(getServletContext(), "backup").setTask(appsName -> job -> performCreateBackupByModule(job,
+                backupRoot, appsName, isScheduleOffLine, false, compressLevel));
+    }
+
+    @Override
+    public void destroy() {
+        if (moduleExecutor != null) {
+            moduleExecutor.shutdownNow();
+        }
+        if (compressExecutor != null) {
+            compressExecutor.shutdownNow();
+        }
+        super.destroy();
+    }
+
+    private int getCompressLevel(HttpServletRequest req) {
+        int level = getIntParameter(req, "level", compressLevel);
+        return level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION ? compressLevel : level;
+    }
+
+    private H2ParallelZipOutput newZipOutput(OutputStream outputStream, int level) {
+        return new H2ParallelZipOutput(outputStream, compressExecutor, compressThreads, level, compressBlockSize);
+    }
+
+    private String performCreateBackupByModule(H2Job job, String backupRoot, String appsName,
+                                               boolean isOffLine, boolean isIncremental, int level)
+            throws Exception {
+        String directory = getTenantDirectory(appsName);
+        H2TenantRegistry.Lease lease = isOffLine ? leaseTenant(appsName, "backup") : null;
+        try {
+            long startTime = System.currentTimeMillis();
+            List<Future<ModuleBackup>> futureList = new ArrayList<>();
+            for (String db : getDatabaseNames()) {
+                String fileName = getDBFileNameByModule(backupRoot, appsName, db);
+                long databaseSize = getDatabaseSize(directory, db);
+                job.addBytesTotal(databaseSize);
+                futureList.add(moduleExecutor.submit(() -> {
+                    job.beginModule(db);
+                    try {
+                        ModuleBackup backup;
+                        if (isIncremental) {
+                            backup = executeIncrementalBackup(appsName, directory, db, db, backupRoot, isOffLine);
+                        } else {
+                            backup = isOffLine ? executeBackup(appsName, directory, db, fileName, level)
+                                    : executeOnlineBackup(appsName, db, db, fileName, level);
+                        }
+                        backup.source = databaseSize;
+                        return backup;
+                    } finally {
+                        job.endModule(db);
+                        job.addBytesDone(databaseSize);
+                    }
+                }));
+            }
+            List<ModuleBackup> backupList = new ArrayList<>();
+            String[] databaseNames = getDatabaseNames();
             try {
-                for (String db : databaseMap.keySet()) {
-                    String fileName = getDBFileNameByModule(backupRoot, appsName, db);
-                    logger.info("Create database backup for (" + appsName + "/" + db + ") to " + fileName);
-                    Backup.execute(fileName, getDirectory(databaseRoot, appsName), db, false);
+                for (int index = 0; index < futureList.size(); index++) {
+                    try {
+                        backupList.add(futureList.get(index).get());
+                    } catch (ExecutionException ex) {
+                        ModuleBackup backup = new ModuleBackup(databaseNames[index]);
+                        backup.error = String.valueOf(ex.getCause());
+                        logger.info("Database back up error : " + appsName + "/" + backup.module + " " + backup.error);
+                        backupList.add(backup);
+                    }
                 }
-                sendResponse(resp, "Database back up is created for " + appsName);
-            } catch (SQLException ex1) {
-                ex1.printStackTrace();
-                sendResponse(resp, "Database back up error : " + appsName + "\n" + ex1.getMessage());
+            } catch (InterruptedException ex) {
+                futureList.forEach(future -> future.cancel(true));
+                throw ex;
+            }
+            backupList.forEach(backup -> recordBackup(appsName, backup));
+            String report = getBackupReport(appsName, backupList, System.currentTimeMillis() - startTime);
+            if (backupList.stream().anyMatch(backup -> backup.error != null)) {
+                throw new SQLException(report);
+            }
+            return report;
+        } finally {
+            if (lease != null) {
+                lease.close();
             }
-        } else {
-            sendResponse(resp, "Online database back up not yet implemented.");
         }
     }
 
-    private void performCreateBackup(HttpServletResponse resp, String databaseRoot, String backupRoot,
-                                     String appsName, boolean isOffLine) throws IOException {
-        if (isOffLine) {
-            String databaseUrl = getDatabaseUrl(appsName);
+    private ModuleBackup executeBackup(String appsName, String directory, String db, String fileName, int level) {
+        ModuleBackup backup = new ModuleBackup(db);
+        long startTime = System.currentTimeMillis();
+        Path path = Paths.get(fileName), tempPath = Paths.get(fileName + ".tmp");
+        try {
+            logger.info("Create database backup for (" + appsName + "/" + db + ") to " + fileName);
+            H2BackupChecksum.ChecksumOutputStream checksumStream = H2BackupChecksum.wrap(
+                    Files.newOutputStream(tempPath));
+            try (H2BackupWriter writer = new H2BackupWriter(newZipOutput(
+                    new BufferedOutputStream(checksumStream, 64 * 1024), level), throttle)) {
+                writer.writeOffline(directory, db);
+                writer.finish();
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            backup.file = path;
+            backup.checksum = H2BackupChecksum.write(path, checksumStream);
+            backup.size = Files.size(backup.file);
+        } catch (SQLException | IOException | RuntimeException ex) {
+            deleteTempFile(tempPath);
+            logger.info("Database back up error : " + appsName + "/" + db + " " + ex.getMessage());
+            backup.error = ex.getMessage();
+        }
+        backup.duration = System.currentTimeMillis() - startTime;
+        return backup;
+    }
+
+    private ModuleBackup executeOnlineBackup(String appsName, String db, String module, String fileName,
+                                             int level) {
+        ModuleBackup backup = new ModuleBackup(db);
+        long startTime = System.currentTimeMillis();
+        H2ConnectionPools pools = H2ConnectionPools.get(getServletContext());
+        Path path = Paths.get(fileName), tempPath = Paths.get(fileName + ".tmp");
+        try (Connection backupConn = pools.getConnection(appsName, module);
+             Connection probeConn = pools.getConnection(appsName, module)) {
+            logger.info("Create online database backup for (" + appsName + "/" + db + ") to " + fileName);
+            H2BackupChecksum.ChecksumOutputStream checksumStream = H2BackupChecksum.wrap(
+                    Files.newOutputStream(tempPath));
+            try (H2BackupWriter writer = new H2BackupWriter(newZipOutput(
+                    new BufferedOutputStream(checksumStream, 64 * 1024), level), throttle)) {
+                backup.online = new H2OnlineBackup(onlineProbeMillis).execute(backupConn, probeConn, connection -> {
+                    writer.writeOnline(connection);
+                    writer.finish();
+                });
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            backup.file = path;
+            backup.checksum = H2BackupChecksum.write(path, checksumStream);
+            backup.size = Files.size(backup.file);
+        } catch (SQLException | IOException | RuntimeException ex) {
+            deleteTempFile(tempPath);
+            logger.info("Online database back up error : " + appsName + "/" + db + " " + ex.getMessage());
+            backup.error = ex.getMessage();
+        }
+        backup.duration = System.currentTimeMillis() - startTime;
+        return backup;
+    }
+
+    private ModuleBackup executeIncrementalBackup(String appsName, String directory, String db, String module,
+                                                  String backupRoot, boolean isOffLine) {
+        ModuleBackup backup = new ModuleBackup(db);
+        long startTime = System.currentTimeMillis();
+        Path manifestPath = Paths.get(getManifestFileNameByModule(backupRoot, appsName, db));
+        H2ChunkStore chunkStore = getChunkStore(backupRoot, appsName);
+        H2ChunkStore.Manifest manifest = chunkStore.newManifest();
+        try {
+            logger.info("Create incremental database backup for (" + appsName + "/" + db + ") to " + manifestPath);
+            if (isOffLine) {
+                List<String> fileList = FileLister.getDatabaseFiles(directory, db, true);
+                FileLister.tryUnlockDatabase(fileList, "backup");
+                for (String fileName : fileList) {
+                    Path path = Paths.get(fileName);
+                    if (Files.isRegularFile(path) && !fileName.endsWith(".trace.db")) {
+                        try (InputStream inputStream = throttle.wrap(Files.newInputStream(path))) {
+                            chunkStore.write(manifest, path.getFileName().toString(), inputStream);
+                        }
+                    }
+                }
+            } else {
+                H2ConnectionPools pools = H2ConnectionPools.get(getServletContext());
+                try (Connection backupConn = pools.getConnection(appsName, module);
+                     Connection probeConn = pools.getConnection(appsName, module)) {
+                    backup.online = new H2OnlineBackup(onlineProbeMillis).execute(backupConn, probeConn,
+                            connection -> {
+                                try (H2BackupWriter.StoreInputStream storeStream = H2BackupWriter.openStore(connection);
+                                     InputStream inputStream = throttle.wrap(storeStream)) {
+                                    chunkStore.write(manifest, storeStream.getName() + ".mv.db", inputStream);
+                                }
+                            });
+                }
+            }
+            chunkStore.writeManifest(manifest, manifestPath);
+            backup.file = manifestPath;
+            backup.size = manifest.getStoredBytes();
+            backup.incremental = manifest;
+        } catch (SQLException | IOException | RuntimeException ex) {
+            logger.info("Incremental database back up error : " + appsName + "/" + db + " " + ex.getMessage());
+            backup.error = ex.getMessage();
+        }
+        backup.duration = System.currentTimeMillis() - startTime;
+        return backup;
+    }
+
+    private void deleteTempFile(Path tempPath) {
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void recordBackup(String appsName, ModuleBackup backup) {
+        metrics.recordBackup(backup.module, backup.duration, backup.source, backup.size, backup.error != null);
+        H2BackupCatalog catalog = H2BackupCatalog.get(getServletContext());
+        if (catalog == null || backup.error != null || backup.file == null) {
+            return;
+        }
+        try {
+            String sha256 = backup.checksum != null ? backup.checksum.getSha256()
+                    : backup.incremental != null ? backup.incremental.getSha256() : null;
+            catalog.record(appsName, backup.module, backup.file, backup.duration,
+                    sha256 != null ? sha256 : H2BackupCatalog.checksum(backup.file));
+        } catch (SQLException | IOException ex) {
+            logger.info("Backup catalog update error : " + appsName + "/" + backup.module + " " + ex.getMessage());
+        }
+    }
+
+    private String getBackupReport(String appsName, List<ModuleBackup> backupList, long duration) {
+        long totalSize = 0;
+        int failed = 0;
+        StringBuilder builder = new StringBuilder();
+        for (ModuleBackup backup : backupList) {
+            builder.append(backup.module).append(" : ");
+            if (backup.error == null) {
+                totalSize += backup.size;
+                builder.append(backup.size).append(" bytes, ").append(backup.duration).append(" ms");
+                if (backup.incremental != null) {
+                    builder.append(", ").append(backup.incremental);
+                }
+                if (backup.online != null) {
+                    builder.append(", ").append(backup.online);
+                }
+                builder.append("\n");
+            } else {
+                failed += 1;
+                builder.append("ERROR ").append(backup.error).append(", ").append(backup.duration).append(" ms\n");
+            }
+        }
+        String title = failed == 0 ? "Database back up is created for " + appsName
+                : "Database back up error : " + appsName + " (" + failed + " of " + backupList.size() + " modules failed)";
+        builder.insert(0, title + "\nTotal : " + totalSize + " bytes, " + duration + " ms\n");
+        logger.info(title + " in " + duration + " ms");
+        return builder.toString();
+    }
+
+    private String performCreateBackup(H2Job job, String backupRoot, String appsName, boolean isOffLine,
+                                       boolean isIncremental, int level) throws SQLException, IOException {
+        String directory = getTenantDirectory(appsName);
+        job.setBytesTotal(getDatabaseSize(directory, appsName));
+        job.beginModule(appsName);
+        H2TenantRegistry.Lease lease = isOffLine ? leaseTenant(appsName, "backup") : null;
+        try {
+            if (isIncremental) {
+                ModuleBackup backup = executeIncrementalBackup(appsName, directory, appsName, null,
+                        backupRoot, isOffLine);
+                backup.source = job.getBytesTotal();
+                recordBackup(appsName, backup);
+                job.addBytesDone(job.getBytesTotal());
+                if (backup.error != null) {
+                    throw new SQLException("Incremental database back up error : " + appsName + "\n" + backup.error);
+                }
+                return "Incremental database back up is created for " + appsName + "\n" + backup.incremental
+                        + ", " + backup.duration + " ms" + (backup.online == null ? "" : ", " + backup.online);
+            }
+            if (isOffLine) {
+                ModuleBackup backup = executeBackup(appsName, directory, appsName,
+                        getDBFileName(backupRoot, appsName), level);
+                backup.source = job.getBytesTotal();
+                recordBackup(appsName, backup);
+                job.addBytesDone(job.getBytesTotal());
+                if (backup.error != null) {
+                    throw new SQLException("Database back up error : " + appsName + "\n" + backup.error);
+                }
+                return "Database back up is created for " + appsName + "\n" + backup.size + " bytes, "
+                        + backup.duration + " ms";
+            }
+            ModuleBackup backup = executeOnlineBackup(appsName, appsName, null,
+                    getDBFileName(backupRoot, appsName), level);
+            backup.source = job.getBytesTotal();
+            recordBackup(appsName, backup);
+            job.addBytesDone(job.getBytesTotal());
+            if (backup.error != null) {
+                throw new SQLException("Online database back up error : " + appsName + "\n" + backup.error);
+            }
+            return "Online database back up is created for " + appsName
+                    + "\n" + backup.size + " bytes, " + backup.duration + " ms, " + backup.online;
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    private String performVerify(H2Job job, String appsName, Path backupFolder, String date,
+                                 List<String> databaseList, boolean isOpen) throws Exception {
+        if (date == null || H2BackupCatalog.parseDate(date) == null) {
+            throw new IOException("Backup date (yyyy-mm-dd) should not be empty.");
+        }
+        Path datePath = backupFolder.resolve(date);
+        if (!Files.isDirectory(datePath)) {
+            throw new IOException("Application backup not found on : " + date);
+        }
+        List<Path> pathList = new ArrayList<>();
+        for (String database : databaseList) {
+            Path path = datePath.resolve(database + ".zip");
+            if (!Files.exists(path)) {
+                path = datePath.resolve(database + H2ChunkStore.MANIFEST_SUFFIX);
+            }
+            if (!Files.exists(path)) {
+                throw new IOException("Application database (" + database + ") backup not found to verify.");
+            }
+            pathList.add(path);
+            job.addBytesTotal(Files.size(path));
+        }
+        H2ChunkStore chunkStore = getChunkStore(backupFolder.getParent().toString(), appsName);
+        long startTime = System.currentTimeMillis();
+        List<Future<String>> futureList = new ArrayList<>();
+        for (int index = 0; index < databaseList.size(); index++) {
+            String database = databaseList.get(index);
+            Path path = pathList.get(index);
+            futureList.add(moduleExecutor.submit(() -> {
+                job.beginModule(database);
+                try {
+                    return verifyModule(chunkStore, database, path, isOpen);
+                } finally {
+                    job.endModule(database);
+                    job.addBytesDone(Files.size(path));
+                }
+            }));
+        }
+        StringBuilder builder = new StringBuilder();
+        int failed = 0;
+        try {
+            for (int index = 0; index < futureList.size(); index++) {
+                try {
+                    builder.append(futureList.get(index).get()).append("\n");
+                } catch (ExecutionException ex) {
+                    failed += 1;
+                    builder.append(databaseList.get(index)).append(" : ERROR ").append(ex.getCause().getMessage())
+                            .append("\n");
+                }
+            }
+        } catch (InterruptedException ex) {
+            futureList.forEach(future -> future.cancel(true));
+            throw ex;
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        String title = failed == 0 ? "Database back up verified for " + appsName + " at " + date
+                : "Database back up verify error : " + appsName + " at " + date + " (" + failed + " of "
+                + databaseList.size() + " modules failed)";
+        builder.insert(0, title + " in " + duration + " ms\n");
+        logger.info(title + " in " + duration + " ms");
+        if (failed != 0) {
+            throw new SQLException(builder.toString());
+        }
+        return builder.toString();
+    }
+
+    private String verifyModule(H2ChunkStore chunkStore, String database, Path path, boolean isOpen)
+            throws IOException, SQLException {
+        long startTime = System.currentTimeMillis();
+        if (path.toString().endsWith(H2ChunkStore.MANIFEST_SUFFIX)) {
+            long bytes = chunkStore.verify(chunkStore.readManifest(path));
+            return database + " : incremental, " + bytes + " bytes, chunks ok" + (isOpen ? ", open skipped" : "")
+                    + ", " + (System.currentTimeMillis() - startTime) + " ms";
+        }
+        String result = H2BackupChecksum.verify(path, throttle);
+        if (isOpen) {
             try {
-                String fileName = getDBFileName(backupRoot, appsName);
-                logger.info("Create database backup for (" + appsName + ") to " + fileName);
-                Backup.execute(fileName, getDirectory(databaseRoot, appsName), databaseUrl, false);
-                sendResponse(resp, "Database back up is created for " + appsName);
-            } catch (SQLException ex1) {
-                ex1.printStackTrace();
-                sendResponse(resp, "Database back up error : " + appsName + "\n" + ex1.getMessage());
+                result += ", opened " + countTables("zip:" + path.toAbsolutePath() + "!/" + database
+                        + ";ACCESS_MODE_DATA=r") + " tables";
+            } catch (SQLException ex) {
+                Path tempPath = Files.createTempDirectory("dcapture-h2-verify-");
+                try {
+                    Restore.main("-dir", throttle.getPath(tempPath.toString()), "-file", path.toString(),
+                            "-db", database);
+                    result += ", opened " + countTables(tempPath.resolve(database).toAbsolutePath().toString())
+                            + " tables (extracted)";
+                } catch (SQLException ex2) {
+                    throw new SQLException("backup can not be opened, " + ex2.getMessage(), ex2);
+                } finally {
+                    deleteDirectory(tempPath);
+                }
             }
-        } else {
-            sendResponse(resp, "Online database back up not yet implemented.");
         }
+        return database + " : " + result + ", " + (System.currentTimeMillis() - startTime) + " ms";
     }
 
-    private void showBackupList(HttpServletResponse resp, String backupRoot, String appsName, String dateText) throws IOException {
-        String backupDirectory = getDirectory(backupRoot, appsName);
-        Path path = Paths.get(backupDirectory, dateText);
-        if (!Files.exists(path)) {
+    private int countTables(String database) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:" + database + ";IFEXISTS=TRUE",
+                H2ContextListener.DATABASE_USER, H2ContextListener.DATABASE_PASSWORD);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void showBackupList(HttpServletResponse resp, Path backupFolder, String appsName, String dateText)
+            throws IOException {
+        LocalDate date = H2BackupCatalog.parseDate(dateText);
+        H2BackupCatalog catalog = H2BackupCatalog.get(getServletContext());
+        List<String> backupList = new ArrayList<>();
+        if (date != null) {
+            try {
+                backupList = catalog == null ? H2BackupCatalog.listBackupFiles(backupFolder.resolve(date.toString()))
+                        : catalog.getFileList(appsName, date);
+            } catch (SQLException ex) {
+                sendError(resp, "Backup catalog error : " + ex.getMessage());
+                return;
+            }
+        }
+        if (backupList.isEmpty() && catalog != null && !catalog.isRebuilt()) {
+            resp.setHeader("Retry-After", "30");
+            sendError(resp, "Backup catalog is indexing, try again later : " + appsName);
+            return;
+        }
+        if (backupList.isEmpty()) {
             sendError(resp, "Database back up not created on " + dateText + " for " + appsName);
             return;
         }
-        List<String> backupList = getDBFileList(path.toString());
         StringBuilder builder = new StringBuilder();
         backupList.forEach(str -> builder.append(str).append(", "));
         sendResponse(resp, "text/plain", builder.toString());
     }
 
-    private void performDownload(HttpServletResponse resp, Path backupFolder, String appsName, String date, String database)
+    private void showCatalog(HttpServletRequest req, HttpServletResponse resp, String appsName) throws IOException {
+        int offset = Math.max(0, getIntParameter(req, "offset", 0));
+        int limit = Math.max(1, Math.min(1000, getIntParameter(req, "limit", 100)));
+        try {
+            sendJson(resp, H2BackupCatalog.get(getServletContext()).query(appsName,
+                    H2BackupCatalog.parseDate(req.getParameter("from")),
+                    H2BackupCatalog.parseDate(req.getParameter("to")), offset, limit));
+        } catch (SQLException ex) {
+            sendError(resp, "Backup catalog error : " + ex.getMessage());
+        }
+    }
+
+    private void performDownload(HttpServletRequest req, HttpServletResponse resp, Path backupFolder, String appsName, String date, String database)
             throws IOException {
         String pathText = getDirectory(backupFolder.toString(), date);
         Path path = Paths.get(pathText);
@@ -114,23 +566,107 @@ public class H2BackupServlet extends MasterHttpServlet {
             return;
         }
         File downloadFile = new File(path.toString(), database + ".zip");
+        Path manifestPath = path.resolve(database + H2ChunkStore.MANIFEST_SUFFIX);
+        long startTime = System.nanoTime();
+        if (!downloadFile.exists() && Files.exists(manifestPath)) {
+            H2ChunkStore chunkStore = getChunkStore(backupFolder.getParent().toString(), appsName);
+            H2ChunkStore.Manifest manifest = chunkStore.readManifest(manifestPath);
+            resp.setContentType("application/octet-stream");
+            resp.setHeader("Content-Disposition",
+                    String.format("attachment; filename=\"%s\"", appsName + "-" + database + "-" + date + ".zip"));
+            try (OutputStream outputStream = resp.getOutputStream()) {
+                long bytes = chunkStore.writeZip(manifest, outputStream);
+                metrics.recordDownload(System.nanoTime() - startTime, bytes, false);
+            } catch (IOException ex) {
+                metrics.recordDownload(System.nanoTime() - startTime, 0, true);
+                throw ex;
+            }
+            return;
+        }
         if (!downloadFile.exists()) {
             sendResponse(resp, "Database backup not found at : " + date + "/" + database);
             return;
         }
-        resp.setContentType("application/octet-stream");
-        resp.setContentLength((int) downloadFile.length());
-        resp.setHeader("Content-Disposition",
-                String.format("attachment; filename=\"%s\"", appsName + "-" + database + "-" + date + ".zip"));
-        try (OutputStream outputStream = resp.getOutputStream()) {
-            try (FileInputStream inputStream = new FileInputStream(downloadFile)) {
-                byte[] buffer = new byte[4096];
-                int length;
-                while ((length = inputStream.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, length);
+        try {
+            long bytes = sendFile(req, resp, downloadFile.toPath(), appsName + "-" + database + "-" + date + ".zip");
+            metrics.recordDownload(System.nanoTime() - startTime, bytes, false);
+        } catch (IOException ex) {
+            metrics.recordDownload(System.nanoTime() - startTime, 0, true);
+            throw ex;
+        }
+    }
+
+    private void performExport(HttpServletResponse resp, String appsName, String database,
+                               boolean isSingleDatabase, boolean isOffLine, int level) throws IOException {
+        List<String> databaseList;
+        if (isSingleDatabase) {
+            databaseList = List.of(appsName);
+        } else if (database == null || database.isBlank()) {
+            databaseList = Arrays.asList(getDatabaseNames());
+        } else if (Arrays.asList(getDatabaseNames()).contains(database)) {
+            databaseList = List.of(database);
+        } else {
+            sendError(resp, "Application database (" + database + ") not found to export.");
+            return;
+        }
+        String directory = getTenantDirectory(appsName);
+        H2ConnectionPools pools = H2ConnectionPools.get(getServletContext());
+        H2TenantRegistry.Lease lease = null;
+        if (isOffLine) {
+            try {
+                lease = leaseTenant(appsName, "export");
+                for (String db : databaseList) {
+                    FileLister.tryUnlockDatabase(FileLister.getDatabaseFiles(directory, db, true), "backup");
+                }
+            } catch (SQLException | IOException ex) {
+                if (lease != null) {
+                    lease.close();
+                }
+                sendError(resp, "Database is in use, export with type=online : " + ex.getMessage());
+                return;
+            }
+        }
+        String suffix = databaseList.size() == 1 && !isSingleDatabase ? "-" + databaseList.get(0) : "";
+        String fileName = appsName + suffix + "-" + dateFormat.format(LocalDate.now()) + ".zip";
+        resp.setContentType("application/zip");
+        resp.setHeader("Content-Disposition", String.format("attachment; filename=\"%s\"", fileName));
+        long startTime = System.currentTimeMillis(), startNanos = System.nanoTime();
+        try (H2BackupWriter writer = new H2BackupWriter(newZipOutput(resp.getOutputStream(), level), throttle)) {
+            for (String db : databaseList) {
+                if (isOffLine) {
+                    writer.writeOffline(directory, db);
+                } else {
+                    try (Connection connection = pools.getConnection(appsName, isSingleDatabase ? null : db)) {
+                        writer.writeOnline(connection);
+                    }
                 }
             }
-            outputStream.flush();
+            writer.finish();
+            metrics.recordDownload(System.nanoTime() - startNanos, writer.getBytesWritten(), false);
+            logger.info("Database export for " + appsName + " streamed " + writer.getBytesRead() + " bytes in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (SQLException | IOException ex) {
+            metrics.recordDownload(System.nanoTime() - startNanos, 0, true);
+            logger.info("Database export error : " + appsName + " " + ex.getMessage());
+            throw new IOException("Database export error : " + appsName, ex);
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    private static class ModuleBackup {
+        private final String module;
+        private Path file;
+        private long size, source, duration;
+        private String error;
+        private H2OnlineBackup.Result online;
+        private H2ChunkStore.Manifest incremental;
+        private H2BackupChecksum checksum;
+
+        ModuleBackup(String module) {
+            this.module = module;
         }
     }
 }
@@ -0,0 +1,163 @@
+package dcapture.h2.service;
+
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.Store;
+import org.h2.store.FileLister;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class H2BackupWriter implements AutoCloseable {
+    private static final Map<MVStore, Snapshot> snapshotMap = new IdentityHashMap<>();
+    private final H2ParallelZipOutput zipOutput;
+    private final H2IoThrottle throttle;
+    private long bytesRead;
+
+    public H2BackupWriter(H2ParallelZipOutput zipOutput, H2IoThrottle throttle) {
+        this.zipOutput = zipOutput;
+        this.throttle = throttle;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return zipOutput.getWritten();
+    }
+
+    public void writeOffline(String directory, String db) throws SQLException, IOException {
+        List<String> fileList = new ArrayList<>();
+        for (String fileName : FileLister.getDatabaseFiles(directory, db, true)) {
+            if (Files.isRegularFile(Paths.get(fileName)) && !fileName.endsWith(".trace.db")) {
+                fileList.add(fileName);
+            }
+        }
+        if (fileList.isEmpty()) {
+            throw new SQLException("No database named " + db + " found in " + directory);
+        }
+        FileLister.tryUnlockDatabase(fileList, "backup");
+        for (String fileName : fileList) {
+            Path path = Paths.get(fileName);
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                writeEntry(path.getFileName().toString(), inputStream, Files.size(path));
+            }
+        }
+    }
+
+    public void writeOnline(Connection connection) throws SQLException, IOException {
+        try (StoreInputStream inputStream = openStore(connection)) {
+            writeEntry(inputStream.getName() + ".mv.db", inputStream, inputStream.getSize());
+        }
+    }
+
+    static StoreInputStream openStore(Connection connection) throws SQLException {
+        Session session = connection.unwrap(JdbcConnection.class).getSession();
+        if (!(session instanceof SessionLocal)) {
+            throw new SQLException("Online export needs an embedded connection : " + connection.getMetaData().getURL());
+        }
+        Database database = ((SessionLocal) session).getDatabase();
+        Store store = database.getStore();
+        store.flush();
+        MVStore mvStore = store.getMvStore();
+        synchronized (database.getLobSyncObject()) {
+            beginSnapshot(mvStore);
+            try {
+                return new StoreInputStream(store.getInputStream(), mvStore,
+                        Paths.get(database.getName()).getFileName().toString(), mvStore.getFileStore().size());
+            } catch (RuntimeException ex) {
+                endSnapshot(mvStore);
+                throw ex;
+            }
+        }
+    }
+
+    private static synchronized void beginSnapshot(MVStore mvStore) {
+        Snapshot snapshot = snapshotMap.get(mvStore);
+        if (snapshot == null) {
+            snapshot = new Snapshot(mvStore.getReuseSpace());
+            snapshotMap.put(mvStore, snapshot);
+            mvStore.setReuseSpace(false);
+        }
+        snapshot.readers += 1;
+    }
+
+    private static synchronized void endSnapshot(MVStore mvStore) {
+        Snapshot snapshot = snapshotMap.get(mvStore);
+        if (snapshot != null && --snapshot.readers == 0) {
+            snapshotMap.remove(mvStore);
+            mvStore.setReuseSpace(snapshot.reuseSpace);
+        }
+    }
+
+    private void writeEntry(String name, InputStream inputStream, long size) throws IOException {
+        bytesRead += zipOutput.writeEntry(name, throttle.wrap(inputStream), size);
+    }
+
+    public void finish() throws IOException {
+        zipOutput.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOutput.close();
+    }
+
+    static class StoreInputStream extends FilterInputStream {
+        private final MVStore mvStore;
+        private final String name;
+        private final long size;
+        private boolean isClosed;
+
+        StoreInputStream(InputStream inputStream, MVStore mvStore, String name, long size) {
+            super(inputStream);
+            this.mvStore = mvStore;
+            this.name = name;
+            this.size = size;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            try {
+                super.close();
+            } finally {
+                endSnapshot(mvStore);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final boolean reuseSpace;
+        private int readers;
+
+        Snapshot(boolean reuseSpace) {
+            this.reuseSpace = reuseSpace;
+        }
+    }
+}
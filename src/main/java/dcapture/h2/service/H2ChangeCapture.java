@@ -0,0 +1,940 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.api.Interval;
+import org.h2.api.IntervalQualifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class H2ChangeCapture {
+    private static final Logger logger = LoggerFactory.getLogger(H2ChangeCapture.class);
+    public static final String SCHEMA = "CDC";
+    public static final String JOURNAL = SCHEMA + ".JOURNAL";
+    private static final String TRIGGER_PREFIX = "CDC_";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int BATCH_MAGIC = 0x48324342;
+    private static final ObjectInputFilter SERIAL_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;maxbytes=16777216;java.lang.*;java.math.*;java.time.*;java.util.*;org.h2.api.*;!*");
+    private final H2TenantRegistry registry;
+    private final Path backupPath;
+    private final String[] modules;
+    private final H2ConnectionPools pools;
+    private final int batchSize, retentionDays;
+    private final long flushMillis;
+    private final AtomicLong drainedRows = new AtomicLong(), drainedBatches = new AtomicLong(),
+            drainedBytes = new AtomicLong(), drainErrors = new AtomicLong();
+    private final ScheduledExecutorService drainer;
+    private volatile long lastDrain;
+    private volatile LocalDate lastPrune;
+
+    public H2ChangeCapture(H2TenantRegistry registry, Path backupPath, H2ConnectionPools pools, long flushMillis,
+                           int batchSize, int retentionDays) {
+        this.registry = registry;
+        this.backupPath = backupPath;
+        this.modules = registry.getModules();
+        this.pools = pools;
+        this.flushMillis = Math.max(100, flushMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.retentionDays = retentionDays;
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2ChangeCaptureDrainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2ChangeCapture get(ServletContext context) {
+        return (H2ChangeCapture) context.getAttribute(H2ChangeCapture.class.getName());
+    }
+
+    public void start() {
+        drainer.scheduleWithFixedDelay(this::drainChanged, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        logger.info("H2 change capture started, flush " + flushMillis + " ms, batch " + batchSize + " rows, log "
+                + backupPath);
+    }
+
+    public void close() {
+        drainer.shutdownNow();
+        try {
+            drainer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        drainChanged();
+    }
+
+    public static int install(Connection connection) throws SQLException {
+        List<String[]> tableList = new ArrayList<>();
+        List<String[]> keylessList = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+            statement.execute("CREATE TABLE IF NOT EXISTS " + JOURNAL + "(ID BIGINT GENERATED BY DEFAULT AS IDENTITY "
+                    + "PRIMARY KEY, CHANGED BIGINT NOT NULL, SCHEMA_NAME VARCHAR(256) NOT NULL, "
+                    + "TABLE_NAME VARCHAR(256) NOT NULL, OP CHAR(1) NOT NULL, DATA VARBINARY)");
+            try (ResultSet resultSet = statement.executeQuery("SELECT T.TABLE_SCHEMA, T.TABLE_NAME, EXISTS("
+                    + "SELECT 1 FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS C WHERE C.TABLE_SCHEMA = T.TABLE_SCHEMA "
+                    + "AND C.TABLE_NAME = T.TABLE_NAME AND C.CONSTRAINT_TYPE = 'PRIMARY KEY') "
+                    + "FROM INFORMATION_SCHEMA.TABLES T WHERE T.TABLE_TYPE = 'BASE TABLE' "
+                    + "AND T.TABLE_SCHEMA NOT IN ('INFORMATION_SCHEMA', '" + SCHEMA + "')")) {
+                while (resultSet.next()) {
+                    String[] table = new String[]{resultSet.getString(1), resultSet.getString(2)};
+                    if (resultSet.getBoolean(3)) {
+                        tableList.add(table);
+                    } else {
+                        keylessList.add(table);
+                    }
+                }
+            }
+            for (String[] table : keylessList) {
+                statement.execute("DROP TRIGGER IF EXISTS " + quote(table[0]) + "."
+                        + quote(TRIGGER_PREFIX + table[1]));
+            }
+            for (String[] table : tableList) {
+                statement.execute("CREATE TRIGGER IF NOT EXISTS " + quote(table[0]) + "."
+                        + quote(TRIGGER_PREFIX + table[1]) + " AFTER INSERT, UPDATE, DELETE ON " + quote(table[0])
+                        + "." + quote(table[1]) + " FOR EACH ROW CALL " + quote(H2ChangeTrigger.class.getName()));
+            }
+        }
+        if (!keylessList.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            for (String[] table : keylessList) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(table[0]).append(".").append(table[1]);
+            }
+            logger.info("Change capture skipped tables without a primary key : " + builder);
+        }
+        return tableList.size();
+    }
+
+    public String install(H2Job job, String tenant) throws SQLException, IOException {
+        List<String> tenantList = H2JobScheduler.ALL_TENANTS.equals(tenant)
+                ? registry.getTenants() : List.of(tenant);
+        long startTime = System.currentTimeMillis();
+        StringBuilder builder = new StringBuilder();
+        int failed = 0, count = 0;
+        for (String name : tenantList) {
+            for (String module : modules) {
+                if (job.isCancelled() || !Files.exists(registry.getTenantPath(name).resolve(module + ".mv.db"))) {
+                    continue;
+                }
+                count += 1;
+                job.beginModule(name + "/" + module);
+                try (Connection connection = pools.getConnection(name, module)) {
+                    builder.append(name).append("/").append(module).append(" : ").append(install(connection))
+                            .append(" tables\n");
+                } catch (SQLException ex) {
+                    failed += 1;
+                    builder.append(name).append("/").append(module).append(" : ERROR ").append(ex.getMessage())
+                            .append("\n");
+                } finally {
+                    job.endModule(name + "/" + module);
+                }
+            }
+        }
+        String title = "Change capture installed for " + tenant + " : " + (count - failed) + " of " + count
+                + " databases in " + (System.currentTimeMillis() - startTime) + " ms";
+        logger.info(title);
+        builder.insert(0, title + "\n");
+        if (count == 0 || failed == count) {
+            throw new SQLException(builder.toString());
+        }
+        return builder.toString();
+    }
+
+    private void drainChanged() {
+        for (String key : H2ChangeTrigger.takeChanged()) {
+            String[] parts = key.split("/", 2);
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                drain(parts[0], parts[1]);
+            } catch (SQLException | IOException ex) {
+                drainErrors.incrementAndGet();
+                logger.info("Change capture drain error : " + key + " " + ex.getMessage());
+            }
+        }
+        lastDrain = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        if (!today.equals(lastPrune)) {
+            lastPrune = today;
+            prune(today.minusDays(retentionDays));
+        }
+    }
+
+    public long drain(String tenant) throws SQLException, IOException {
+        long count = 0;
+        for (String module : modules) {
+            if (Files.exists(registry.getTenantPath(tenant).resolve(module + ".mv.db"))) {
+                count += drain(tenant, module);
+            }
+        }
+        return count;
+    }
+
+    public synchronized long drain(String tenant, String module) throws SQLException, IOException {
+        long count = 0;
+        try (Connection connection = pools.getConnection(tenant, module)) {
+            if (!isInstalled(connection)) {
+                return count;
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement("SELECT ID, CHANGED, SCHEMA_NAME, "
+                    + "TABLE_NAME, OP, DATA FROM " + JOURNAL + " ORDER BY ID FETCH FIRST ? ROWS ONLY");
+                 PreparedStatement delete = connection.prepareStatement("DELETE FROM " + JOURNAL + " WHERE ID = ?")) {
+                while (true) {
+                    List<Change> changeList = new ArrayList<>();
+                    select.setInt(1, batchSize);
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            changeList.add(new Change(resultSet.getLong(1), resultSet.getLong(2),
+                                    resultSet.getString(3), resultSet.getString(4), resultSet.getString(5).charAt(0),
+                                    resultSet.getBytes(6)));
+                        }
+                    }
+                    connection.commit();
+                    if (changeList.isEmpty()) {
+                        break;
+                    }
+                    writeLog(getLogPath(tenant, module), changeList);
+                    for (Change change : changeList) {
+                        delete.setLong(1, change.id);
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                    connection.commit();
+                    count += changeList.size();
+                    if (changeList.size() < batchSize) {
+                        break;
+                    }
+                }
+            } catch (SQLException | IOException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        drainedRows.addAndGet(count);
+        return count;
+    }
+
+    private static boolean isInstalled(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM INFORMATION_SCHEMA.TABLES "
+                + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'JOURNAL'")) {
+            statement.setString(1, SCHEMA);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    public Path getLogPath(String tenant, String module) {
+        return backupPath.resolve(tenant).resolve("changes").resolve(module);
+    }
+
+    private void writeLog(Path logPath, List<Change> changeList) throws IOException {
+        Map<LocalDate, List<Change>> dayMap = new TreeMap<>();
+        for (Change change : changeList) {
+            dayMap.computeIfAbsent(toDate(change.time), key -> new ArrayList<>()).add(change);
+        }
+        Files.createDirectories(logPath);
+        for (Map.Entry<LocalDate, List<Change>> entry : dayMap.entrySet()) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            long firstTime = Long.MAX_VALUE, lastTime = Long.MIN_VALUE;
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream outputStream = new DataOutputStream(new DeflaterOutputStream(payload, deflater))) {
+                for (Change change : entry.getValue()) {
+                    outputStream.writeLong(change.id);
+                    outputStream.writeLong(change.time);
+                    outputStream.writeUTF(change.schema);
+                    outputStream.writeUTF(change.table);
+                    outputStream.writeByte(change.op);
+                    outputStream.writeInt(change.data.length);
+                    outputStream.write(change.data);
+                    firstTime = Math.min(firstTime, change.time);
+                    lastTime = Math.max(lastTime, change.time);
+                }
+            } finally {
+                deflater.end();
+            }
+            byte[] data = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ByteBuffer buffer = ByteBuffer.allocate(36 + data.length);
+            buffer.putInt(BATCH_MAGIC).putInt(data.length).putLong(firstTime).putLong(lastTime)
+                    .putInt(entry.getValue().size()).putLong(crc.getValue()).put(data).flip();
+            Path file = logPath.resolve(entry.getKey() + LOG_SUFFIX);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            drainedBatches.incrementAndGet();
+            drainedBytes.addAndGet(36 + data.length);
+        }
+    }
+
+    private void prune(LocalDate before) {
+        if (retentionDays <= 0 || !Files.isDirectory(backupPath)) {
+            return;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> tenantStream = Files.newDirectoryStream(backupPath, Files::isDirectory)) {
+            for (Path tenantPath : tenantStream) {
+                Path changePath = tenantPath.resolve("changes");
+                if (!Files.isDirectory(changePath)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> moduleStream = Files.newDirectoryStream(changePath, Files::isDirectory)) {
+                    for (Path modulePath : moduleStream) {
+                        for (Path file : getLogFiles(modulePath, LocalDate.MIN, before.minusDays(1))) {
+                            Files.deleteIfExists(file);
+                            count += 1;
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            logger.info("Change capture log prune error : " + ex.getMessage());
+        }
+        if (count != 0) {
+            logger.info("Change capture logs older than " + before + " deleted : " + count + " files");
+        }
+    }
+
+    private static List<Path> getLogFiles(Path logPath, LocalDate from, LocalDate to) throws IOException {
+        Map<LocalDate, Path> fileMap = new TreeMap<>();
+        if (Files.isDirectory(logPath)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(logPath, "*" + LOG_SUFFIX)) {
+                for (Path file : stream) {
+                    String name = file.getFileName().toString();
+                    LocalDate date = H2BackupCatalog.parseDate(name.substring(0, name.length() - LOG_SUFFIX.length()));
+                    if (date != null && !date.isBefore(from) && !date.isAfter(to)) {
+                        fileMap.put(date, file);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(fileMap.values());
+    }
+
+    public String replay(Connection connection, String tenant, String module, long fromMillis, long untilMillis)
+            throws SQLException, IOException {
+        long startTime = System.currentTimeMillis();
+        List<Path> fileList = getLogFiles(getLogPath(tenant, module), toDate(fromMillis), toDate(untilMillis));
+        Replay replay = new Replay(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        H2ChangeTrigger.suppress(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            if (isInstalled(connection)) {
+                statement.execute("DELETE FROM " + JOURNAL);
+            }
+            connection.setAutoCommit(false);
+            for (Path file : fileList) {
+                readLog(file, fromMillis, untilMillis, replay);
+            }
+            replay.finish();
+            connection.commit();
+        } catch (SQLException | IOException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            replay.close();
+            H2ChangeTrigger.suppress(false);
+            connection.setAutoCommit(autoCommit);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        }
+        return replay.count + " changes replayed from " + fileList.size() + " log files in "
+                + (System.currentTimeMillis() - startTime) + " ms";
+    }
+
+    private void readLog(Path file, long fromMillis, long untilMillis, Replay replay)
+            throws SQLException, IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int magic, length, count;
+                long firstTime, lastTime, checksum;
+                byte[] data;
+                try {
+                    magic = inputStream.readInt();
+                } catch (EOFException ex) {
+                    return;
+                }
+                try {
+                    length = inputStream.readInt();
+                    firstTime = inputStream.readLong();
+                    lastTime = inputStream.readLong();
+                    count = inputStream.readInt();
+                    checksum = inputStream.readLong();
+                    if (magic != BATCH_MAGIC || length < 0) {
+                        throw new IOException("Change log corrupt : " + file + ", bad batch header");
+                    }
+                    data = inputStream.readNBytes(length);
+                    if (data.length != length) {
+                        throw new EOFException();
+                    }
+                } catch (EOFException ex) {
+                    logger.info("Change log ends with an incomplete batch : " + file);
+                    return;
+                }
+                if (lastTime <= fromMillis || firstTime > untilMillis) {
+                    continue;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if (crc.getValue() != checksum) {
+                    throw new IOException("Change log corrupt : " + file + ", batch checksum mismatch");
+                }
+                try (DataInputStream batch = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(data)))) {
+                    for (int index = 0; index < count; index++) {
+                        batch.readLong();
+                        long time = batch.readLong();
+                        String schema = batch.readUTF(), table = batch.readUTF();
+                        char op = (char) batch.readByte();
+                        byte[] rows = batch.readNBytes(batch.readInt());
+                        if (fromMillis < time && time <= untilMillis) {
+                            replay.apply(schema, table, op, decodeRows(rows));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public String toJson() {
+        return new JsonBuilder().beginObject().field("flushMillis", flushMillis).field("batchSize", batchSize)
+                .field("retentionDays", retentionDays).field("drainedRows", drainedRows.get())
+                .field("drainedBatches", drainedBatches.get()).field("drainedBytes", drainedBytes.get())
+                .field("drainErrors", drainErrors.get()).field("lastDrain", lastDrain).endObject().toString();
+    }
+
+    private static LocalDate toDate(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static String quote(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    static int getColumnHash(Connection connection, String schema, String table) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COLUMN_NAME, DATA_TYPE "
+                + "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? "
+                + "ORDER BY ORDINAL_POSITION")) {
+            statement.setString(1, schema);
+            statement.setString(2, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    builder.append(resultSet.getString(1)).append(' ').append(resultSet.getString(2)).append(',');
+                }
+            }
+        }
+        return getColumnHash(builder.toString());
+    }
+
+    private static int getColumnHash(String columns) {
+        CRC32 crc = new CRC32();
+        crc.update(columns.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    public static byte[] encodeRows(int columnHash, Object[] oldRow, Object[] newRow) throws SQLException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(128);
+        try (DataOutputStream outputStream = new DataOutputStream(data)) {
+            outputStream.writeInt(columnHash);
+            writeRow(outputStream, oldRow);
+            writeRow(outputStream, newRow);
+        } catch (IOException ex) {
+            throw new SQLException("Change capture encode error : " + ex.getMessage(), ex);
+        }
+        return data.toByteArray();
+    }
+
+    static Rows decodeRows(byte[] data) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(data))) {
+            return new Rows(inputStream.readInt(), readRow(inputStream), readRow(inputStream));
+        }
+    }
+
+    private static void writeRow(DataOutputStream outputStream, Object[] row) throws IOException, SQLException {
+        if (row == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+        outputStream.writeInt(row.length);
+        for (Object value : row) {
+            writeValue(outputStream, value);
+        }
+    }
+
+    private static Object[] readRow(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        Object[] row = new Object[length];
+        for (int index = 0; index < length; index++) {
+            row[index] = readValue(inputStream);
+        }
+        return row;
+    }
+
+    private static void writeValue(DataOutputStream outputStream, Object value) throws IOException, SQLException {
+        if (value == null) {
+            outputStream.writeByte(0);
+        } else if (value instanceof Boolean) {
+            outputStream.writeByte(1);
+            outputStream.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            outputStream.writeByte(2);
+            outputStream.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            outputStream.writeByte(3);
+            outputStream.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            outputStream.writeByte(4);
+            outputStream.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            outputStream.writeByte(5);
+            outputStream.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            outputStream.writeByte(6);
+            writeBytes(outputStream, value.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof String) {
+            outputStream.writeByte(7);
+            writeBytes(outputStream, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            outputStream.writeByte(7);
+            writeBytes(outputStream, clob.getSubString(1, (int) clob.length()).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[]) {
+            outputStream.writeByte(8);
+            writeBytes(outputStream, (byte[]) value);
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            outputStream.writeByte(8);
+            writeBytes(outputStream, blob.getBytes(1, (int) blob.length()));
+        } else if (value instanceof Timestamp) {
+            outputStream.writeByte(9);
+            outputStream.writeLong(((Timestamp) value).getTime());
+            outputStream.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            outputStream.writeByte(10);
+            outputStream.writeLong(((java.sql.Date) value).toLocalDate().toEpochDay());
+        } else if (value instanceof Time) {
+            outputStream.writeByte(11);
+            outputStream.writeLong(((Time) value).toLocalTime().toNanoOfDay());
+        } else if (value instanceof LocalDate) {
+            outputStream.writeByte(13);
+            outputStream.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalDateTime) {
+            outputStream.writeByte(14);
+            outputStream.writeLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+            outputStream.writeLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (value instanceof OffsetDateTime) {
+            OffsetDateTime dateTime = (OffsetDateTime) value;
+            outputStream.writeByte(15);
+            outputStream.writeLong(dateTime.toLocalDate().toEpochDay());
+            outputStream.writeLong(dateTime.toLocalTime().toNanoOfDay());
+            outputStream.writeInt(dateTime.getOffset().getTotalSeconds());
+        } else if (value instanceof LocalTime) {
+            outputStream.writeByte(16);
+            outputStream.writeLong(((LocalTime) value).toNanoOfDay());
+        } else if (value instanceof OffsetTime) {
+            outputStream.writeByte(17);
+            outputStream.writeLong(((OffsetTime) value).toLocalTime().toNanoOfDay());
+            outputStream.writeInt(((OffsetTime) value).getOffset().getTotalSeconds());
+        } else if (value instanceof UUID) {
+            outputStream.writeByte(18);
+            outputStream.writeLong(((UUID) value).getMostSignificantBits());
+            outputStream.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Object[]) {
+            outputStream.writeByte(19);
+            writeRow(outputStream, (Object[]) value);
+        } else if (value instanceof Interval) {
+            Interval interval = (Interval) value;
+            outputStream.writeByte(20);
+            outputStream.writeByte(interval.getQualifier().ordinal());
+            outputStream.writeBoolean(interval.isNegative());
+            outputStream.writeLong(interval.getLeading());
+            outputStream.writeLong(interval.getRemaining());
+        } else if (value instanceof Serializable && isSerializable(value.getClass().getName())) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectStream = new ObjectOutputStream(data)) {
+                objectStream.writeObject(value);
+            }
+            outputStream.writeByte(12);
+            writeBytes(outputStream, data.toByteArray());
+        } else {
+            throw new SQLException("Change capture does not support " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream inputStream) throws IOException {
+        int type = inputStream.readByte();
+        switch (type) {
+            case 0:
+                return null;
+            case 1:
+                return inputStream.readBoolean();
+            case 2:
+                return inputStream.readInt();
+            case 3:
+                return inputStream.readLong();
+            case 4:
+                return inputStream.readDouble();
+            case 5:
+                return inputStream.readFloat();
+            case 6:
+                return new BigDecimal(new String(readBytes(inputStream), StandardCharsets.UTF_8));
+            case 7:
+                return new String(readBytes(inputStream), StandardCharsets.UTF_8);
+            case 8:
+                return readBytes(inputStream);
+            case 9:
+                Timestamp timestamp = new Timestamp(inputStream.readLong());
+                timestamp.setNanos(inputStream.readInt());
+                return timestamp;
+            case 10:
+                return java.sql.Date.valueOf(LocalDate.ofEpochDay(inputStream.readLong()));
+            case 11:
+                return Time.valueOf(LocalTime.ofNanoOfDay(inputStream.readLong()));
+            case 12:
+                try (ObjectInputStream objectStream = new ObjectInputStream(
+                        new ByteArrayInputStream(readBytes(inputStream)))) {
+                    objectStream.setObjectInputFilter(SERIAL_FILTER);
+                    return objectStream.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException(ex);
+                }
+            case 13:
+                return LocalDate.ofEpochDay(inputStream.readLong());
+            case 14:
+                return LocalDateTime.of(LocalDate.ofEpochDay(inputStream.readLong()),
+                        LocalTime.ofNanoOfDay(inputStream.readLong()));
+            case 15:
+                return OffsetDateTime.of(LocalDate.ofEpochDay(inputStream.readLong()),
+                        LocalTime.ofNanoOfDay(inputStream.readLong()), ZoneOffset.ofTotalSeconds(inputStream.readInt()));
+            case 16:
+                return LocalTime.ofNanoOfDay(inputStream.readLong());
+            case 17:
+                return OffsetTime.of(LocalTime.ofNanoOfDay(inputStream.readLong()),
+                        ZoneOffset.ofTotalSeconds(inputStream.readInt()));
+            case 18:
+                return new UUID(inputStream.readLong(), inputStream.readLong());
+            case 19:
+                return readRow(inputStream);
+            case 20:
+                return new Interval(IntervalQualifier.valueOf(inputStream.readByte()), inputStream.readBoolean(),
+                        inputStream.readLong(), inputStream.readLong());
+            default:
+                throw new IOException("Change log value type not valid : " + type);
+        }
+    }
+
+    private static boolean isSerializable(String className) {
+        return className.startsWith("java.lang.") || className.startsWith("java.math.")
+                || className.startsWith("java.time.") || className.startsWith("java.util.")
+                || className.startsWith("org.h2.api.");
+    }
+
+    private static void writeBytes(DataOutputStream outputStream, byte[] data) throws IOException {
+        outputStream.writeInt(data.length);
+        outputStream.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        byte[] data = inputStream.readNBytes(length);
+        if (data.length != length) {
+            throw new EOFException();
+        }
+        return data;
+    }
+
+    static class Rows {
+        final int columnHash;
+        final Object[] oldRow, newRow;
+
+        Rows(int columnHash, Object[] oldRow, Object[] newRow) {
+            this.columnHash = columnHash;
+            this.oldRow = oldRow;
+            this.newRow = newRow;
+        }
+    }
+
+    private static class Change {
+        private final long id, time;
+        private final String schema, table;
+        private final char op;
+        private final byte[] data;
+
+        Change(long id, long time, String schema, String table, char op, byte[] data) {
+            this.id = id;
+            this.time = time;
+            this.schema = schema;
+            this.table = table;
+            this.op = op;
+            this.data = data;
+        }
+    }
+
+    static class Replay {
+        private final Connection connection;
+        private final Map<String, TableInfo> tableMap = new HashMap<>();
+        private long count;
+
+        Replay(Connection connection) {
+            this.connection = connection;
+        }
+
+        void apply(String schema, String table, char op, Rows rows) throws SQLException {
+            TableInfo info = tableMap.get(schema + "." + table);
+            if (info == null) {
+                info = new TableInfo(connection, schema, table);
+                tableMap.put(schema + "." + table, info);
+            }
+            Object[] oldRow = rows.oldRow, newRow = rows.newRow;
+            info.check(rows.columnHash, oldRow);
+            info.check(rows.columnHash, newRow);
+            if (oldRow != null && (newRow == null || !info.isSameKey(oldRow, newRow))) {
+                info.delete(oldRow);
+            }
+            if (newRow != null) {
+                info.merge(newRow);
+            }
+            count += 1;
+            if (count % 1000 == 0) {
+                connection.commit();
+            }
+        }
+
+        void finish() throws SQLException {
+            for (TableInfo info : tableMap.values()) {
+                info.restartIdentity();
+            }
+        }
+
+        void close() {
+            for (TableInfo info : tableMap.values()) {
+                info.close();
+            }
+        }
+    }
+
+    private static class TableInfo {
+        private final Connection connection;
+        private final String name;
+        private final List<String> columnList = new ArrayList<>();
+        private final List<Integer> valueList = new ArrayList<>(), keyList = new ArrayList<>();
+        private final Map<String, Integer> columnMap = new LinkedHashMap<>();
+        private final List<String> identityList = new ArrayList<>();
+        private final int columnHash;
+        private PreparedStatement merge, delete;
+        private boolean isChanged;
+
+        TableInfo(Connection connection, String schema, String table) throws SQLException {
+            this.connection = connection;
+            this.name = quote(schema) + "." + quote(table);
+            StringBuilder columns = new StringBuilder();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT COLUMN_NAME, IS_GENERATED, "
+                    + "IS_IDENTITY, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? "
+                    + "AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+                statement.setString(1, schema);
+                statement.setString(2, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String column = resultSet.getString(1);
+                        columns.append(column).append(' ').append(resultSet.getString(4)).append(',');
+                        columnMap.put(column, columnList.size());
+                        if (!"ALWAYS".equals(resultSet.getString(2))) {
+                            valueList.add(columnList.size());
+                        }
+                        if ("YES".equals(resultSet.getString(3))) {
+                            identityList.add(column);
+                        }
+                        columnList.add(column);
+                    }
+                }
+            }
+            if (columnList.isEmpty()) {
+                throw new SQLException("Change log table not found in backup : " + name);
+            }
+            columnHash = getColumnHash(columns.toString());
+            try (PreparedStatement statement = connection.prepareStatement("SELECT K.COLUMN_NAME "
+                    + "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS C JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE K "
+                    + "ON K.CONSTRAINT_SCHEMA = C.CONSTRAINT_SCHEMA AND K.CONSTRAINT_NAME = C.CONSTRAINT_NAME "
+                    + "WHERE C.CONSTRAINT_TYPE = 'PRIMARY KEY' AND C.TABLE_SCHEMA = ? AND C.TABLE_NAME = ? "
+                    + "ORDER BY K.ORDINAL_POSITION")) {
+                statement.setString(1, schema);
+                statement.setString(2, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        keyList.add(columnMap.get(resultSet.getString(1)));
+                    }
+                }
+            }
+            if (keyList.isEmpty()) {
+                throw new SQLException("Change log table has no primary key : " + name + ", replay from an "
+                        + "overlapping snapshot would duplicate its rows");
+            }
+        }
+
+        void check(int hash, Object[] row) throws SQLException {
+            if (row != null && row.length != columnList.size()) {
+                throw new SQLException("Change log row does not match table " + name + " (" + row.length
+                        + " values, " + columnList.size() + " columns), the table changed after the backup");
+            }
+            if (hash != columnHash) {
+                throw new SQLException("Change log row does not match table " + name + " (column names or types "
+                        + "differ), the table changed after the backup");
+            }
+        }
+
+        boolean isSameKey(Object[] oldRow, Object[] newRow) {
+            for (int index : keyList) {
+                if (!Objects.deepEquals(oldRow[index], newRow[index])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void merge(Object[] row) throws SQLException {
+            if (merge == null) {
+                merge = connection.prepareStatement("MERGE INTO " + name + "(" + getNames(valueList, ", ")
+                        + ") KEY(" + getNames(keyList, ", ") + ") VALUES (" + "?, ".repeat(valueList.size() - 1)
+                        + "?)");
+            }
+            setValues(merge, valueList, row, 1);
+            merge.executeUpdate();
+            isChanged = true;
+        }
+
+        void delete(Object[] row) throws SQLException {
+            if (delete == null) {
+                delete = connection.prepareStatement("DELETE FROM " + name + " WHERE " + getMatch(keyList));
+            }
+            setValues(delete, keyList, row, 1);
+            delete.executeUpdate();
+        }
+
+        void restartIdentity() throws SQLException {
+            if (!isChanged) {
+                return;
+            }
+            try (Statement statement = connection.createStatement()) {
+                for (String column : identityList) {
+                    long next;
+                    try (ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(" + quote(column)
+                            + "), 0) + 1 FROM " + name)) {
+                        resultSet.next();
+                        next = resultSet.getLong(1);
+                    }
+                    statement.execute("ALTER TABLE " + name + " ALTER COLUMN " + quote(column) + " RESTART WITH "
+                            + next);
+                }
+            }
+        }
+
+        private String getNames(List<Integer> indexList, String separator) {
+            StringBuilder builder = new StringBuilder();
+            for (int index : indexList) {
+                if (builder.length() != 0) {
+                    builder.append(separator);
+                }
+                builder.append(quote(columnList.get(index)));
+            }
+            return builder.toString();
+        }
+
+        private String getMatch(List<Integer> indexList) {
+            StringBuilder builder = new StringBuilder();
+            for (int index : indexList) {
+                if (builder.length() != 0) {
+                    builder.append(" AND ");
+                }
+                builder.append(quote(columnList.get(index))).append(" IS NOT DISTINCT FROM ?");
+            }
+            return builder.toString();
+        }
+
+        private void setValues(PreparedStatement statement, List<Integer> indexList, Object[] row, int offset)
+                throws SQLException {
+            for (int index = 0; index < indexList.size(); index++) {
+                statement.setObject(offset + index, row[indexList.get(index)]);
+            }
+        }
+
+        void close() {
+            for (PreparedStatement statement : new PreparedStatement[]{merge, delete}) {
+                if (statement != null) {
+                    try {
+                        statement.close();
+                    } catch (SQLException ex) {
+                        // ignore
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dcapture.h2.service;
+
+import org.h2.api.Trigger;
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class H2ChangeTrigger implements Trigger {
+    private static final String INSERT_SQL = "INSERT INTO " + H2ChangeCapture.JOURNAL
+            + "(CHANGED, SCHEMA_NAME, TABLE_NAME, OP, DATA) VALUES (?, ?, ?, ?, ?)";
+    private static final ThreadLocal<Boolean> suppressed = new ThreadLocal<>();
+    private static final Set<String> changedSet = ConcurrentHashMap.newKeySet();
+    private final Map<Session, PreparedStatement> statementMap = new ConcurrentHashMap<>();
+    private String schemaName, tableName, databaseKey;
+    private int columnHash;
+
+    public static void suppress(boolean value) {
+        if (value) {
+            suppressed.set(Boolean.TRUE);
+        } else {
+            suppressed.remove();
+        }
+    }
+
+    public static List<String> takeChanged() {
+        List<String> keyList = new ArrayList<>();
+        for (String key : changedSet) {
+            if (changedSet.remove(key)) {
+                keyList.add(key);
+            }
+        }
+        return keyList;
+    }
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+                     int type) throws SQLException {
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        columnHash = H2ChangeCapture.getColumnHash(conn, schemaName, tableName);
+        Session session = conn.unwrap(JdbcConnection.class).getSession();
+        if (session instanceof SessionLocal) {
+            Path path = Paths.get(((SessionLocal) session).getDatabase().getName());
+            Path parent = path.getParent();
+            databaseKey = parent == null ? null
+                    : H2ConnectionPools.getKey(parent.getFileName().toString(), path.getFileName().toString());
+        }
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (suppressed.get() != null) {
+            return;
+        }
+        String op = oldRow == null ? "I" : newRow == null ? "D" : "U";
+        PreparedStatement statement = getStatement(conn);
+        statement.setLong(1, System.currentTimeMillis());
+        statement.setString(2, schemaName);
+        statement.setString(3, tableName);
+        statement.setString(4, op);
+        statement.setBytes(5, H2ChangeCapture.encodeRows(columnHash, oldRow, newRow));
+        statement.executeUpdate();
+        if (databaseKey != null) {
+            changedSet.add(databaseKey);
+        }
+    }
+
+    private PreparedStatement getStatement(Connection conn) throws SQLException {
+        Session session = conn.unwrap(JdbcConnection.class).getSession();
+        PreparedStatement statement = statementMap.get(session);
+        if (statement == null) {
+            statementMap.keySet().removeIf(Session::isClosed);
+            statement = conn.prepareStatement(INSERT_SQL);
+            statementMap.put(session, statement);
+        }
+        return statement;
+    }
+
+    @Override
+    public void close() {
+        statementMap.clear();
+    }
+
+    @Override
+    public void remove() {
+        statementMap.clear();
+    }
+}
@@ -0,0 +1,368 @@
+package dcapture.h2.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+public class H2ChunkStore {
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String MANIFEST_HEADER = "# dcapture-h2 incremental backup";
+    private static final long GC_GRACE_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final Map<Path, ReadWriteLock> lockMap = new ConcurrentHashMap<>();
+    private final Path chunkRoot;
+    private final ReadWriteLock lock;
+    private final int chunkSize;
+    private final H2IoThrottle throttle;
+
+    public H2ChunkStore(Path chunkRoot, int chunkSize, H2IoThrottle throttle) {
+        this.chunkRoot = chunkRoot;
+        this.chunkSize = chunkSize;
+        this.throttle = throttle;
+        this.lock = lockMap.computeIfAbsent(chunkRoot.toAbsolutePath().normalize(),
+                path -> new ReentrantReadWriteLock());
+    }
+
+    public Manifest newManifest() {
+        Manifest manifest = new Manifest();
+        manifest.created = System.currentTimeMillis();
+        return manifest;
+    }
+
+    public void write(Manifest manifest, String fileName, InputStream inputStream) throws IOException {
+        MessageDigest digest = getDigest();
+        FileEntry entry = new FileEntry(fileName);
+        byte[] buffer = new byte[chunkSize];
+        int length;
+        while ((length = inputStream.readNBytes(buffer, 0, chunkSize)) > 0) {
+            digest.reset();
+            digest.update(buffer, 0, length);
+            String hash = toHex(digest.digest());
+            Path chunkPath = getChunkPath(hash);
+            lock.readLock().lock();
+            try {
+                if (!Files.exists(chunkPath)) {
+                    manifest.storedBytes += writeChunk(chunkPath, buffer, length);
+                    manifest.storedChunks += 1;
+                } else {
+                    Files.setLastModifiedTime(chunkPath, FileTime.fromMillis(System.currentTimeMillis()));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            entry.chunkList.add(hash);
+            entry.lengthList.add(length);
+            entry.size += length;
+            manifest.chunks += 1;
+        }
+        manifest.fileList.add(entry);
+    }
+
+    public void restore(Manifest manifest, Path directory, H2Job job) throws IOException {
+        for (FileEntry entry : manifest.fileList) {
+            try (OutputStream outputStream = throttle.wrap(Files.newOutputStream(directory.resolve(entry.name)))) {
+                for (int index = 0; index < entry.chunkList.size(); index++) {
+                    outputStream.write(readChunk(entry, index, false));
+                    if (job != null) {
+                        job.addBytesDone(entry.lengthList.get(index));
+                    }
+                }
+            }
+        }
+    }
+
+    public long writeZip(Manifest manifest, OutputStream outputStream) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(throttle.wrap(outputStream));
+        ZipOutputStream zipOutputStream = new ZipOutputStream(countingStream);
+        for (FileEntry entry : manifest.fileList) {
+            zipOutputStream.putNextEntry(new ZipEntry(entry.name));
+            copyTo(entry, zipOutputStream);
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+        return countingStream.count;
+    }
+
+    public void writeManifest(Manifest manifest, Path manifestPath) throws IOException {
+        Path tempPath = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        MessageDigest digest = getDigest();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(Files.newOutputStream(tempPath), digest), StandardCharsets.UTF_8))) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            if (manifest.created != 0) {
+                writer.write("created " + manifest.created);
+                writer.newLine();
+            }
+            for (FileEntry entry : manifest.fileList) {
+                writer.write("file " + entry.size + " " + entry.name);
+                writer.newLine();
+                for (int index = 0; index < entry.chunkList.size(); index++) {
+                    writer.write("chunk " + entry.lengthList.get(index) + " " + entry.chunkList.get(index));
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifest.sha256 = toHex(digest.digest());
+    }
+
+    public Manifest readManifest(Path manifestPath) throws IOException {
+        Manifest manifest = new Manifest();
+        FileEntry entry = null;
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 3);
+                if ("created".equals(parts[0]) && parts.length == 2) {
+                    manifest.created = parseLong(parts[1], manifestPath, line);
+                } else if ("file".equals(parts[0]) && parts.length == 3) {
+                    entry = new FileEntry(parts[2]);
+                    manifest.fileList.add(entry);
+                } else if ("chunk".equals(parts[0]) && parts.length == 3 && entry != null) {
+                    int length = Integer.parseInt(parts[1]);
+                    entry.chunkList.add(parts[2]);
+                    entry.lengthList.add(length);
+                    entry.size += length;
+                    manifest.chunks += 1;
+                } else {
+                    throw new IOException("Invalid backup manifest " + manifestPath + " : " + line);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static long parseLong(String text, Path manifestPath, String line) throws IOException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid backup manifest " + manifestPath + " : " + line, ex);
+        }
+    }
+
+    public long verify(Manifest manifest) throws IOException {
+        long bytes = 0;
+        for (FileEntry entry : manifest.fileList) {
+            for (int index = 0; index < entry.chunkList.size(); index++) {
+                bytes += readChunk(entry, index, true).length;
+            }
+        }
+        return bytes;
+    }
+
+    public String collectGarbage(Path backupFolder) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Set<String> hashSet = new HashSet<>();
+        List<Path> manifestList;
+        try (Stream<Path> stream = Files.walk(backupFolder)) {
+            manifestList = stream.filter(path -> !path.startsWith(chunkRoot)
+                    && path.getFileName().toString().endsWith(MANIFEST_SUFFIX)).collect(Collectors.toList());
+        }
+        for (Path manifestPath : manifestList) {
+            for (FileEntry entry : readManifest(manifestPath).fileList) {
+                hashSet.addAll(entry.chunkList);
+            }
+        }
+        if (!Files.isDirectory(chunkRoot)) {
+            return manifestList.size() + " manifests, no chunks";
+        }
+        List<Path> chunkList;
+        try (Stream<Path> stream = Files.walk(chunkRoot, 2)) {
+            chunkList = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        long deletedBytes = 0, graceTime = startTime - GC_GRACE_MILLIS;
+        int deleted = 0;
+        for (Path chunkPath : chunkList) {
+            if (hashSet.contains(chunkPath.getFileName().toString())) {
+                continue;
+            }
+            lock.writeLock().lock();
+            try {
+                if (Files.exists(chunkPath) && Files.getLastModifiedTime(chunkPath).toMillis() < graceTime) {
+                    deletedBytes += Files.size(chunkPath);
+                    Files.delete(chunkPath);
+                    deleted += 1;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return manifestList.size() + " manifests, " + chunkList.size() + " chunks, " + deleted
+                + " unreferenced chunks deleted (" + deletedBytes + " bytes) in "
+                + (System.currentTimeMillis() - startTime) + " ms";
+    }
+
+    private void copyTo(FileEntry entry, OutputStream outputStream) throws IOException {
+        for (int index = 0; index < entry.chunkList.size(); index++) {
+            outputStream.write(readChunk(entry, index, false));
+        }
+    }
+
+    private byte[] readChunk(FileEntry entry, int index, boolean isThrottled) throws IOException {
+        String hash = entry.chunkList.get(index);
+        int length = entry.lengthList.get(index);
+        Path chunkPath = getChunkPath(hash);
+        if (!Files.exists(chunkPath)) {
+            throw new IOException("Backup chunk missing : " + hash + " (" + entry.name + ")");
+        }
+        byte[] data;
+        InputStream fileStream = Files.newInputStream(chunkPath);
+        try (InputStream inputStream = new InflaterInputStream(isThrottled ? throttle.wrap(fileStream)
+                : fileStream)) {
+            data = inputStream.readNBytes(length + 1);
+        } catch (ZipException ex) {
+            throw new IOException("Backup chunk corrupt : " + hash + " (" + entry.name + ") "
+                    + ex.getMessage(), ex);
+        }
+        MessageDigest digest = getDigest();
+        digest.update(data);
+        if (data.length != length || !hash.equals(toHex(digest.digest()))) {
+            throw new IOException("Backup chunk corrupt : " + hash + " (" + entry.name + ")");
+        }
+        return data;
+    }
+
+    private long writeChunk(Path chunkPath, byte[] buffer, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length / 2 + 64);
+        try {
+            deflater.setInput(buffer, 0, length);
+            deflater.finish();
+            byte[] block = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(block);
+                outputStream.write(block, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        Files.createDirectories(chunkPath.getParent());
+        Path tempPath = chunkPath.resolveSibling(chunkPath.getFileName() + "." + Thread.currentThread().getId());
+        Files.write(tempPath, outputStream.toByteArray());
+        Files.move(tempPath, chunkPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return outputStream.size();
+    }
+
+    private Path getChunkPath(String hash) {
+        return chunkRoot.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte data : bytes) {
+            builder.append(Character.forDigit((data >> 4) & 0xF, 16)).append(Character.forDigit(data & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    public static class Manifest {
+        private final List<FileEntry> fileList = new ArrayList<>();
+        private long created, chunks, storedChunks, storedBytes;
+        private String sha256;
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getSize() {
+            long size = 0;
+            for (FileEntry entry : fileList) {
+                size += entry.size;
+            }
+            return size;
+        }
+
+        public long getChunks() {
+            return chunks;
+        }
+
+        public long getStoredChunks() {
+            return storedChunks;
+        }
+
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return getSize() + " bytes in " + chunks + " chunks, " + storedChunks + " new chunks ("
+                    + storedBytes + " bytes stored)";
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int data) throws IOException {
+            out.write(data);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            count += length;
+        }
+    }
+
+    private static class FileEntry {
+        private final String name;
+        private final List<String> chunkList = new ArrayList<>();
+        private final List<Integer> lengthList = new ArrayList<>();
+        private long size;
+
+        FileEntry(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package dcapture.h2.service;
+
+import org.h2.engine.Database;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class H2Compactor {
+    private static final Logger logger = LoggerFactory.getLogger(H2Compactor.class);
+    private static final int TARGET_FILL_RATE = 95, REWRITE_SIZE = 16 * 1024 * 1024;
+    private final H2TenantRegistry registry;
+    private final String[] modules;
+    private final H2ConnectionPools pools;
+
+    public H2Compactor(H2TenantRegistry registry, H2ConnectionPools pools) {
+        this.registry = registry;
+        this.modules = registry.getModules();
+        this.pools = pools;
+    }
+
+    public String compact(H2Job job, String tenant, long budgetMillis)
+            throws IOException, SQLException, InterruptedException {
+        List<String> tenantList = H2JobScheduler.ALL_TENANTS.equals(tenant)
+                ? registry.getTenants() : List.of(tenant);
+        List<Module> moduleList = new ArrayList<>();
+        for (String name : tenantList) {
+            for (String module : modules) {
+                Path file = registry.getTenantPath(name).resolve(module + ".mv.db");
+                if (Files.isRegularFile(file)) {
+                    Module item = new Module(name, module, file);
+                    item.before = Files.size(file);
+                    job.addBytesTotal(item.before);
+                    moduleList.add(item);
+                }
+            }
+        }
+        if (moduleList.isEmpty()) {
+            throw new IOException("No databases found to compact : " + tenant);
+        }
+        long startTime = System.currentTimeMillis(), stopAt = startTime + budgetMillis;
+        for (Module item : moduleList) {
+            long remaining = stopAt - System.currentTimeMillis();
+            if (remaining <= 0 || job.isCancelled()) {
+                item.error = "skipped, time budget used";
+                continue;
+            }
+            job.beginModule(item.getName());
+            try {
+                compactModule(item, remaining);
+            } catch (SQLException | IOException ex) {
+                logger.info("Database compaction error : " + item.getName() + " " + ex.getMessage());
+                item.error = ex.getMessage();
+            } finally {
+                job.endModule(item.getName());
+                job.addBytesDone(item.before);
+            }
+        }
+        return getReport(tenant, moduleList, System.currentTimeMillis() - startTime);
+    }
+
+    private void compactModule(Module item, long budgetMillis)
+            throws SQLException, IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        try (H2TenantRegistry.Lease lease = registry.lease(item.tenant, "compact")) {
+            pools.evict(item.tenant);
+            Database database = H2OpenDatabases.getDatabase(item.file.getParent().resolve(item.module));
+            if (database == null) {
+                lease.lock(item.file);
+                lease.unlock();
+                database = H2OpenDatabases.getDatabase(item.file.getParent().resolve(item.module));
+            }
+            if (database != null) {
+                item.mode = "online";
+                compactOnline(database, budgetMillis);
+            } else {
+                item.mode = "offline";
+                compactOffline(item, budgetMillis);
+            }
+        }
+        item.after = Files.size(item.file);
+        item.duration = System.currentTimeMillis() - startTime;
+        logger.info("Database compacted (" + item.mode + ") " + item.getName() + " : " + item.before + " -> "
+                + item.after + " bytes in " + item.duration + " ms");
+    }
+
+    private void compactOnline(Database database, long budgetMillis) throws InterruptedException {
+        long stopAt = System.currentTimeMillis() + budgetMillis;
+        MVStore mvStore = database.getStore().getMvStore();
+        int retentionTime = mvStore.getRetentionTime();
+        try {
+            mvStore.compactFile((int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetMillis)));
+        } finally {
+            mvStore.setRetentionTime(retentionTime);
+        }
+        int fillRate = -1;
+        while (fillRate < mvStore.getChunksFillRate() && System.currentTimeMillis() < stopAt) {
+            fillRate = mvStore.getChunksFillRate();
+            database.checkpoint();
+            Thread.sleep(1000);
+        }
+    }
+
+    private void compactOffline(Module item, long budgetMillis) throws SQLException {
+        String url = "jdbc:h2:" + item.file.getParent().resolve(item.module).toAbsolutePath()
+                + ";IFEXISTS=TRUE;MAX_COMPACT_TIME=" + Math.max(1, Math.min(Integer.MAX_VALUE, budgetMillis));
+        DriverManager.getConnection(url, H2ContextListener.DATABASE_USER, H2ContextListener.DATABASE_PASSWORD).close();
+    }
+
+    private String getReport(String tenant, List<Module> moduleList, long duration) throws SQLException {
+        long before = 0, after = 0, reclaimed = 0;
+        int failed = 0;
+        StringBuilder builder = new StringBuilder();
+        for (Module item : moduleList) {
+            builder.append(item.getName()).append(" : ");
+            if (item.error == null) {
+                before += item.before;
+                after += item.after;
+                reclaimed += Math.max(0, item.before - item.after);
+                builder.append(item.mode).append(", ").append(item.before).append(" -> ").append(item.after)
+                        .append(" bytes, reclaimed ").append(Math.max(0, item.before - item.after)).append(" bytes, ")
+                        .append(item.duration).append(" ms\n");
+            } else {
+                failed += 1;
+                builder.append("ERROR ").append(item.error).append("\n");
+            }
+        }
+        String title = "Database compaction for " + tenant + (failed == 0 ? ""
+                : " (" + failed + " of " + moduleList.size() + " modules not compacted)");
+        builder.insert(0, title + "\nReclaimed : " + reclaimed + " bytes (" + before + " -> " + after + " bytes), "
+                + duration + " ms\n");
+        logger.info(title + ", reclaimed " + reclaimed + " bytes in " + duration + " ms");
+        if (failed == moduleList.size()) {
+            throw new SQLException(builder.toString());
+        }
+        return builder.toString();
+    }
+
+    private static class Module {
+        private final String tenant, module;
+        private final Path file;
+        private long before, after, duration;
+        private String mode, error;
+
+        Module(String tenant, String module, Path file) {
+            this.tenant = tenant;
+            this.module = module;
+            this.file = file;
+        }
+
+        String getName() {
+            return tenant + "/" + module;
+        }
+    }
+}
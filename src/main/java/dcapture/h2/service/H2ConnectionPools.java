@@ -0,0 +1,259 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class H2ConnectionPools {
+    private static final Logger logger = LoggerFactory.getLogger(H2ConnectionPools.class);
+    private final Map<String, PoolEntry> poolMap = new ConcurrentHashMap<>();
+    private final Queue<PoolEntry> retiredQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+    private final H2TenantRegistry registry;
+    private final int maxConnections, timeoutSeconds;
+    private final long idleMillis;
+
+    public H2ConnectionPools(H2TenantRegistry registry, int maxConnections, int timeoutSeconds, int idleSeconds) {
+        this.registry = registry;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.timeoutSeconds = Math.max(1, timeoutSeconds);
+        this.idleMillis = Math.max(1, idleSeconds) * 1000L;
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2ConnectionPoolEvictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, idleMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static H2ConnectionPools get(ServletContext context) {
+        return (H2ConnectionPools) context.getAttribute(H2ConnectionPools.class.getName());
+    }
+
+    public static String getKey(String tenant, String module) {
+        return module == null ? tenant : tenant + "/" + module;
+    }
+
+    public Connection getConnection(String tenant, String module) throws SQLException {
+        String key = getKey(tenant, module);
+        String reason = registry.getBusyReason(tenant);
+        if (reason != null) {
+            throw new SQLException("Tenant databases are busy (" + reason + ") : " + tenant);
+        }
+        while (true) {
+            PoolEntry entry = poolMap.computeIfAbsent(key, PoolEntry::new);
+            entry.leases.incrementAndGet();
+            try {
+                if (entry.disposed) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long startTime = System.nanoTime();
+                try {
+                    Connection connection = entry.pool.getConnection();
+                    entry.borrowed.incrementAndGet();
+                    reason = registry.getBusyReason(tenant);
+                    if (reason != null) {
+                        connection.close();
+                        evictKey(key);
+                        throw new SQLException("Tenant databases are busy (" + reason + ") : " + tenant);
+                    }
+                    return connection;
+                } catch (SQLException ex) {
+                    entry.failed.incrementAndGet();
+                    throw ex;
+                } finally {
+                    long nanos = System.nanoTime() - startTime;
+                    entry.waitNanos.addAndGet(nanos);
+                    entry.maxWaitNanos.accumulateAndGet(nanos, Math::max);
+                    entry.lastUsed = System.currentTimeMillis();
+                }
+            } finally {
+                entry.leases.decrementAndGet();
+            }
+        }
+    }
+
+    public int evict(String tenant) {
+        int count = 0;
+        for (PoolEntry entry : new ArrayList<>(poolMap.values())) {
+            if (entry.key.equals(tenant) || entry.key.startsWith(tenant + "/")) {
+                poolMap.remove(entry.key, entry);
+                entry.retire();
+                count += 1;
+            }
+        }
+        evictedCount.addAndGet(count);
+        return count;
+    }
+
+    public boolean evictKey(String key) {
+        PoolEntry entry = poolMap.get(key);
+        if (entry == null || entry.pinned != null) {
+            return false;
+        }
+        poolMap.remove(entry.key, entry);
+        entry.retire();
+        evictedCount.incrementAndGet();
+        return true;
+    }
+
+    public boolean pin(String tenant, String module) throws SQLException {
+        PoolEntry entry = poolMap.get(getKey(tenant, module));
+        if (registry.isBusy(tenant) || entry != null && entry.pinned != null) {
+            return false;
+        }
+        Connection connection = getConnection(tenant, module);
+        entry = poolMap.get(getKey(tenant, module));
+        synchronized (this) {
+            if (entry == null || entry.disposed || entry.pinned != null || registry.isBusy(tenant)) {
+                connection.close();
+                return false;
+            }
+            entry.pinned = connection;
+        }
+        return true;
+    }
+
+    public List<String> getKeys() {
+        return new ArrayList<>(poolMap.keySet());
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<String> evictedList = new ArrayList<>();
+        for (PoolEntry entry : poolMap.values()) {
+            if (now - entry.lastUsed < idleMillis || !entry.isIdle()) {
+                continue;
+            }
+            entry.disposed = true;
+            if (entry.isIdle()) {
+                poolMap.remove(entry.key, entry);
+                entry.dispose();
+                evictedList.add(entry.key);
+            } else {
+                entry.disposed = false;
+            }
+        }
+        if (!evictedList.isEmpty()) {
+            evictedCount.addAndGet(evictedList.size());
+            logger.info("H2 idle connection pools closed : " + evictedList);
+        }
+        List<String> retiredList = new ArrayList<>();
+        for (PoolEntry entry : retiredQueue) {
+            if (entry.isIdle() && retiredQueue.remove(entry)) {
+                entry.dispose();
+                retiredList.add(entry.key);
+            }
+        }
+        if (!retiredList.isEmpty()) {
+            logger.info("H2 evicted connection pools closed after last connection returned : " + retiredList);
+        }
+    }
+
+    public String toJson() {
+        JsonBuilder builder = new JsonBuilder().beginObject();
+        builder.field("maxConnections", maxConnections).field("timeoutSeconds", timeoutSeconds)
+                .field("idleSeconds", idleMillis / 1000).field("evicted", evictedCount.get())
+                .field("retired", retiredQueue.size());
+        builder.name("pools").beginArray();
+        for (PoolEntry entry : new TreeMap<>(poolMap).values()) {
+            long borrowed = entry.borrowed.get();
+            builder.beginObject().field("key", entry.key)
+                    .field("active", entry.pool.getActiveConnections()).field("pinned", entry.pinned != null)
+                    .field("borrowed", borrowed).field("failed", entry.failed.get())
+                    .field("avgWaitMicros", borrowed == 0 ? 0 : entry.waitNanos.get() / borrowed / 1000)
+                    .field("maxWaitMicros", entry.maxWaitNanos.get() / 1000)
+                    .field("created", entry.created).field("lastUsed", entry.lastUsed).endObject();
+        }
+        return builder.endArray().endObject().toString();
+    }
+
+    public void close() {
+        evictor.shutdownNow();
+        for (PoolEntry entry : poolMap.values()) {
+            entry.disposed = true;
+            entry.dispose();
+        }
+        poolMap.clear();
+        for (PoolEntry entry : retiredQueue) {
+            entry.dispose();
+        }
+        retiredQueue.clear();
+    }
+
+    private class PoolEntry {
+        private final String key;
+        private final JdbcConnectionPool pool;
+        private final AtomicInteger leases = new AtomicInteger();
+        private final AtomicLong borrowed = new AtomicLong(), failed = new AtomicLong(),
+                waitNanos = new AtomicLong(), maxWaitNanos = new AtomicLong();
+        private final long created = System.currentTimeMillis();
+        private volatile long lastUsed = created;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean disposed;
+        private volatile Connection pinned;
+
+        PoolEntry(String key) {
+            this.key = key;
+            pool = JdbcConnectionPool.create(registry.acquire(key) + ";IFEXISTS=TRUE",
+                    H2ContextListener.DATABASE_USER, H2ContextListener.DATABASE_PASSWORD);
+            pool.setMaxConnections(maxConnections);
+            pool.setLoginTimeout(timeoutSeconds);
+        }
+
+        void retire() {
+            disposed = true;
+            closePinned();
+            if (isIdle()) {
+                dispose();
+            } else {
+                retiredQueue.add(this);
+            }
+        }
+
+        void dispose() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            pool.dispose();
+            closePinned();
+            registry.release(key);
+        }
+
+        private void closePinned() {
+            Connection connection = pinned;
+            pinned = null;
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        boolean isIdle() {
+            return pinned == null && leases.get() == 0 && pool.getActiveConnections() == 0;
+        }
+    }
+}
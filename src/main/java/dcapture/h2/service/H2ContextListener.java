@@ -12,21 +12,33 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class H2ContextListener implements ServletContextListener {
     private static final Logger logger = LoggerFactory.getLogger(H2ContextListener.class);
     public static final int SERVICE_PORT = 8083, SHUTDOWN_PORT = 8084;
-
-    private static String[] getModules() {
-        return new String[]{"shared", "cashbook", "materials", "project", "inventory", "purchase", "sales"};
-    }
+    public static final String DATABASE_USER = "sa", DATABASE_PASSWORD = "Teamwork";
+    private static final String DRAINED = H2ContextListener.class.getName() + ".drained";
+    private static final long CANCEL_WAIT = 5000;
 
     public static String startDatabaseService(ServletContext context) {
         String error = null;
@@ -63,19 +75,14 @@ public class H2ContextListener implements ServletContextListener {
         Server tcpServer = (Server)context.getAttribute(TcpServer.class.getName());
         Server webServer = (Server)context.getAttribute(WebServer.class.getName());
         try {
-            logger.info("H2 database status.");
             if(tcpServer == null || !tcpServer.isRunning(false)) {
-                logger.info("H2 tcp server is offline.");
                 status[0] = "H2 tcp server is offline.";
             } else {
-                logger.info("H2 tcp server is running.");
                 status[0] = "H2 tcp server is running.";
             }
             if(webServer == null || !webServer.isRunning(false)) {
-                logger.info("H2 web server is offline.");
                 status[1] = "H2 web server is offline.";
             }else {
-                logger.info("H2 web server is running.");
                 status[1] = "H2 web server is running.";
             }
         } catch (Exception exc) {
@@ -86,6 +93,118 @@ public class H2ContextListener implements ServletContextListener {
         return status;
     }
 
+    public static long[] getTcpSessions(ServletContext context) {
+        Server tcpServer = (Server)context.getAttribute(TcpServer.class.getName());
+        if(tcpServer == null || !tcpServer.isRunning(false)) {
+            return null;
+        }
+        String url = "jdbc:h2:" + TcpServer.getManagementDbName(tcpServer.getPort()) + ";IFEXISTS=TRUE";
+        try (Connection conn = DriverManager.getConnection(url, "", getAuthPassword(context));
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), COUNT(DISTINCT URL) FROM SESSIONS")) {
+            resultSet.next();
+            return new long[]{resultSet.getLong(1), resultSet.getLong(2)};
+        } catch (SQLException exc) {
+            return new long[]{-1, -1};
+        }
+    }
+
+    public static void drainDatabaseService(ServletContext context, long deadline) {
+        synchronized (H2ContextListener.class) {
+            if (context.getAttribute(DRAINED) != null) {
+                return;
+            }
+            context.setAttribute(DRAINED, Boolean.TRUE);
+        }
+        int cancelled = 0;
+        for (String type : new String[]{"backup", "compact"}) {
+            H2JobScheduler scheduler = H2JobScheduler.get(context, type);
+            if (scheduler != null) {
+                cancelled += scheduler.close();
+            }
+        }
+        H2JobService jobService = H2JobService.get(context);
+        if (jobService != null) {
+            cancelled += jobService.drain();
+            int running = jobService.getActiveCount();
+            long startTime = System.currentTimeMillis();
+            logger.info("H2 shutdown : waiting for " + running + " running jobs, " + cancelled
+                    + " queued jobs cancelled.");
+            try {
+                if (!jobService.awaitIdle(deadline - startTime)) {
+                    logger.info("H2 shutdown : " + jobService.getActiveCount() + " jobs still running after "
+                            + (System.currentTimeMillis() - startTime) + " ms, cancelling.");
+                    jobService.shutdown();
+                    if (!jobService.awaitIdle(CANCEL_WAIT)) {
+                        logger.info("H2 shutdown : " + jobService.getActiveCount()
+                                + " jobs did not stop after cancel.");
+                    }
+                } else if (running != 0) {
+                    logger.info("H2 shutdown : jobs finished in " + (System.currentTimeMillis() - startTime) + " ms");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                jobService.shutdown();
+            }
+        }
+        H2HealthProber prober = H2HealthProber.get(context);
+        if (prober != null) {
+            prober.close();
+            context.removeAttribute(H2HealthProber.class.getName());
+        }
+        H2MemoryGovernor governor = H2MemoryGovernor.get(context);
+        if (governor != null) {
+            governor.close();
+            context.removeAttribute(H2MemoryGovernor.class.getName());
+        }
+        H2TenantLifecycle lifecycle = H2TenantLifecycle.get(context);
+        if (lifecycle != null) {
+            lifecycle.close();
+            context.removeAttribute(H2TenantLifecycle.class.getName());
+            checkpointDatabases(lifecycle.refreshOpenPaths(), getInitParameter(context, "shutdown.threads", 4),
+                    deadline);
+        }
+    }
+
+    private static void checkpointDatabases(List<Path> pathList, int threads, long deadline) {
+        if (pathList.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger(), synced = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pathList.size())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "H2Checkpoint-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            for (Path path : pathList) {
+                executor.execute(() -> {
+                    String url = "jdbc:h2:" + path + ";IFEXISTS=TRUE";
+                    try (Connection conn = DriverManager.getConnection(url, DATABASE_USER, DATABASE_PASSWORD);
+                         Statement statement = conn.createStatement()) {
+                        statement.execute("CHECKPOINT SYNC");
+                        synced.incrementAndGet();
+                    } catch (SQLException ex) {
+                        logger.info("H2 checkpoint error : " + path + " " + ex.getMessage());
+                    }
+                });
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(Math.max(1000L, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS)) {
+                logger.info("H2 checkpoint : time limit reached, remaining databases close without checkpoint.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("H2 checkpoint : " + synced.get() + " of " + pathList.size()
+                + " databases synced in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
     public static String stopDatabaseService(ServletContext context) {
         String error = null;
         Server tcpServer = (Server)context.getAttribute(TcpServer.class.getName());
@@ -114,25 +233,29 @@ public class H2ContextListener implements ServletContextListener {
         return error;
     }
 
-    public static String createDatabaseByModule(String name, String user, String password) {
+    public static String createDatabaseByModule(H2TenantRegistry registry, String name, String user,
+                                                String password) {
         StringBuilder builder = new StringBuilder();
-        for (String moduleName : getModules()) {
-            String info = createDatabaseByModule(name, moduleName, user, password);
+        registry.placeTenant(name);
+        for (String moduleName : registry.getModules()) {
+            String info = createDatabaseByModule(registry, name, moduleName, user, password);
             builder.append(info).append("\n");
         }
         return builder.toString();
     }
 
-    public static String createDatabase(String name, String user, String password) {
+    public static String createDatabase(H2TenantRegistry registry, String name, String user, String password) {
         Connection conn = null;
         String info = null;
+        registry.placeTenant(name);
+        String url = registry.getUrl(name, null);
         try {
-            conn = DriverManager.getConnection(getH2EmbeddedUrl(name), user, password);
+            conn = DriverManager.getConnection(url, user, password);
             conn.close();
-            info = "Database Created : " + getH2EmbeddedUrl(name);
+            info = "Database Created : " + url;
         } catch (Exception se) {
             se.printStackTrace();
-            info = "ERROR : Create database for (" + getH2EmbeddedUrl(name) + ") " + se.getMessage();
+            info = "ERROR : Create database for (" + url + ") " + se.getMessage();
         } finally {
             try {
                 if (conn != null) {
@@ -146,16 +269,18 @@ public class H2ContextListener implements ServletContextListener {
         return info;
     }
 
-    private static String createDatabaseByModule(String name, String module, String user, String password) {
+    private static String createDatabaseByModule(H2TenantRegistry registry, String name, String module, String user,
+                                                 String password) {
         Connection conn = null;
         String info = null;
+        String url = registry.getUrl(name, module);
         try {
-            conn = DriverManager.getConnection(getH2EmbeddedUrl(name, module), user, password);
+            conn = DriverManager.getConnection(url, user, password);
             conn.close();
-            info = "Database Created : " + getH2EmbeddedUrl(name, module);
+            info = "Database Created : " + url;
         } catch (Exception se) {
             se.printStackTrace();
-            info = "ERROR : Create database for (" + getH2EmbeddedUrl(name, module) + ") " + se.getMessage();
+            info = "ERROR : Create database for (" + url + ") " + se.getMessage();
         } finally {
             try {
                 if (conn != null) {
@@ -169,22 +294,157 @@ public class H2ContextListener implements ServletContextListener {
         return info;
     }
 
-    private static String getH2EmbeddedUrl(String name, String module) {
-        return "jdbc:h2:~/data/" + name + "/" + module;
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        H2JobService jobService = new H2JobService(getInitParameter(context, "job.workers", 2),
+                getInitParameter(context, "job.queue", 50), getInitParameter(context, "job.history", 100));
+        context.setAttribute(H2JobService.class.getName(), jobService);
+        H2TenantRegistry registry = new H2TenantRegistry(H2TenantRegistry.parseVolumes(
+                context.getInitParameter("database.data"), context.getInitParameter("database.volumes")),
+                getInitParameter(context, "volume.min.free", 1024) * 1024L * 1024L);
+        H2StartupScan.recoverSwaps(registry.getVolumes());
+        try {
+            registry.scan();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        context.setAttribute(H2TenantRegistry.class.getName(), registry);
+        H2ConnectionPools connectionPools = new H2ConnectionPools(registry,
+                getInitParameter(context, "pool.max.connections", 8), getInitParameter(context, "pool.timeout", 30),
+                getInitParameter(context, "pool.idle.timeout", 300));
+        context.setAttribute(H2ConnectionPools.class.getName(), connectionPools);
+        context.setAttribute(H2Metrics.class.getName(), new H2Metrics(registry.getModules()));
+        H2IoThrottle throttle = new H2IoThrottle(getInitParameter(context, "io.rate.business", 0) * 1024L,
+                getInitParameter(context, "io.rate.offhours", 0) * 1024L,
+                getInitParameter(context, "io.business.start", 8), getInitParameter(context, "io.business.end", 20));
+        context.setAttribute(H2IoThrottle.class.getName(), throttle);
+        H2IoThrottle.register(throttle);
+        H2ContextListener.startDatabaseService(context);
+        startBackupCatalog(context);
+        startChangeCapture(context, registry, connectionPools);
+        startTenantLifecycle(context, registry, connectionPools);
+        startStartupScan(context, registry, connectionPools);
+        startScheduler(context, jobService, registry, "backup", getInitParameter(context, "backup.max.concurrent", 2),
+                getInitParameter(context, "backup.schedule.jitter", 60));
+        startScheduler(context, jobService, registry, "compact", 1,
+                getInitParameter(context, "compact.schedule.jitter", 0));
     }
 
-    private static String getH2EmbeddedUrl(String name) {
-        return "jdbc:h2:~/data/" + name;
+    private static void startScheduler(ServletContext context, H2JobService jobService, H2TenantRegistry registry,
+                                       String type, int maxConcurrent, int jitterMinutes) {
+        H2JobScheduler scheduler = new H2JobScheduler(type, jobService, registry,
+                context.getInitParameter(type + ".schedule"), maxConcurrent, jitterMinutes);
+        context.setAttribute(H2JobScheduler.getAttributeName(type), scheduler);
+        scheduler.start();
     }
 
-    @Override
-    public void contextInitialized(ServletContextEvent sce) {
-        H2ContextListener.startDatabaseService(sce.getServletContext());
+    private static void startTenantLifecycle(ServletContext context, H2TenantRegistry registry,
+                                             H2ConnectionPools connectionPools) {
+        Set<String> hotSet = H2TenantLifecycle.parseTenants(context.getInitParameter("tenant.hot"));
+        H2TenantLifecycle lifecycle = new H2TenantLifecycle(registry, connectionPools, hotSet,
+                getInitParameter(context, "tenant.idle.timeout", 1800),
+                getInitParameter(context, "tenant.max.open", 0), getInitParameter(context, "tenant.sweep.interval", 60),
+                getInitParameter(context, "tenant.warm.rows", 10000));
+        context.setAttribute(H2TenantLifecycle.class.getName(), lifecycle);
+        lifecycle.start();
+        H2MemoryGovernor governor = new H2MemoryGovernor(lifecycle::getOpenPaths,
+                getInitParameter(context, "memory.cache.budget", 0), getInitParameter(context, "memory.cache.min", 4),
+                getInitParameter(context, "memory.interval", 60));
+        context.setAttribute(H2MemoryGovernor.class.getName(), governor);
+        governor.start();
+        H2HealthProber prober = new H2HealthProber(registry,
+                () -> (Server) context.getAttribute(TcpServer.class.getName()),
+                () -> (Server) context.getAttribute(WebServer.class.getName()), lifecycle::getOpenPaths,
+                getInitParameter(context, "health.interval", 10), getInitParameter(context, "health.timeout", 5));
+        context.setAttribute(H2HealthProber.class.getName(), prober);
+        prober.start();
+    }
+
+    private static void startStartupScan(ServletContext context, H2TenantRegistry registry,
+                                         H2ConnectionPools connectionPools) {
+        if ("false".equalsIgnoreCase(context.getInitParameter("startup.scan"))) {
+            return;
+        }
+        H2StartupScan scan = new H2StartupScan(registry, connectionPools,
+                H2TenantLifecycle.parseTenants(context.getInitParameter("tenant.hot")),
+                getInitParameter(context, "tenant.max.open", 0), getInitParameter(context, "startup.threads", 4),
+                getInitParameter(context, "startup.warm.rows", 0));
+        context.setAttribute(H2StartupScan.class.getName(), scan);
+        scan.start();
+    }
+
+    private static void startChangeCapture(ServletContext context, H2TenantRegistry registry,
+                                           H2ConnectionPools connectionPools) {
+        String backupRoot = context.getInitParameter("database.backup");
+        if (!"true".equalsIgnoreCase(context.getInitParameter("capture.enabled")) || backupRoot == null) {
+            return;
+        }
+        H2ChangeCapture capture = new H2ChangeCapture(registry, Paths.get(backupRoot), connectionPools,
+                getInitParameter(context, "capture.flush", 1000),
+                getInitParameter(context, "capture.batch", 5000), getInitParameter(context, "capture.retention", 35));
+        context.setAttribute(H2ChangeCapture.class.getName(), capture);
+        capture.start();
+    }
+
+    private static void startBackupCatalog(ServletContext context) {
+        String backupRoot = context.getInitParameter("database.backup");
+        if (backupRoot == null) {
+            return;
+        }
+        try {
+            Path backupPath = Paths.get(backupRoot);
+            Files.createDirectories(backupPath);
+            H2BackupCatalog catalog = new H2BackupCatalog(backupPath);
+            context.setAttribute(H2BackupCatalog.class.getName(), catalog);
+            Thread thread = new Thread(() -> {
+                try {
+                    catalog.rebuild();
+                } catch (Exception ex) {
+                    logger.info("H2 backup catalog rebuild error : " + ex.getMessage());
+                }
+            }, "H2BackupCatalog");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        H2ContextListener.stopDatabaseService(sce.getServletContext());
+        ServletContext context = sce.getServletContext();
+        drainDatabaseService(context, System.currentTimeMillis()
+                + getInitParameter(context, "shutdown.timeout", 120) * 1000L);
+        H2BackupCatalog catalog = H2BackupCatalog.get(context);
+        if (catalog != null) {
+            catalog.close();
+        }
+        H2ChangeCapture capture = H2ChangeCapture.get(context);
+        if (capture != null) {
+            capture.close();
+        }
+        H2StartupScan scan = H2StartupScan.get(context);
+        if (scan != null) {
+            scan.close();
+        }
+        H2ConnectionPools connectionPools = H2ConnectionPools.get(context);
+        if (connectionPools != null) {
+            connectionPools.close();
+        }
+        H2ContextListener.stopDatabaseService(context);
+    }
+
+    public static int getInitParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
     }
 
     private static String getAuthPassword(ServletContext servletContext) {
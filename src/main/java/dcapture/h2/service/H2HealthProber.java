@@ -0,0 +1,154 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.engine.Database;
+import org.h2.tools.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class H2HealthProber {
+    private static final Logger logger = LoggerFactory.getLogger(H2HealthProber.class);
+    public static final String UP = "up", DEGRADED = "degraded", DOWN = "down", STALE = "stale";
+    private final H2TenantRegistry registry;
+    private final Supplier<Server> tcpSupplier, webSupplier;
+    private final Supplier<List<Path>> openSupplier;
+    private final long intervalMillis;
+    private final int timeoutSeconds;
+    private final Map<String, String> errorMap = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService prober;
+    private volatile String status = STALE, json = "{\"status\":\"stale\",\"probed\":0}";
+    private volatile long probed;
+
+    public H2HealthProber(H2TenantRegistry registry, Supplier<Server> tcpSupplier, Supplier<Server> webSupplier,
+                          Supplier<List<Path>> openSupplier, int intervalSeconds, int timeoutSeconds) {
+        this.registry = registry;
+        this.tcpSupplier = tcpSupplier;
+        this.webSupplier = webSupplier;
+        this.openSupplier = openSupplier;
+        this.intervalMillis = Math.max(1, intervalSeconds) * 1000L;
+        this.timeoutSeconds = Math.max(1, timeoutSeconds);
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2HealthProber");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2HealthProber get(ServletContext context) {
+        return (H2HealthProber) context.getAttribute(H2HealthProber.class.getName());
+    }
+
+    public void start() {
+        prober.scheduleWithFixedDelay(this::probe, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("H2 health prober started, interval " + (intervalMillis / 1000) + " s");
+    }
+
+    public void close() {
+        prober.shutdownNow();
+    }
+
+    public boolean isHealthy() {
+        return !isStale() && !DOWN.equals(status);
+    }
+
+    public String toJson() {
+        if (isStale()) {
+            return "{\"status\":\"" + STALE + "\",\"probed\":" + probed + "}";
+        }
+        return json;
+    }
+
+    private boolean isStale() {
+        return System.currentTimeMillis() - probed > intervalMillis * 3 + timeoutSeconds * 1000L;
+    }
+
+    private void probe() {
+        long startTime = System.nanoTime();
+        try {
+            Server tcpServer = tcpSupplier.get(), webServer = webSupplier.get();
+            boolean tcpRunning = tcpServer != null && tcpServer.isRunning(false);
+            boolean webRunning = webServer != null && webServer.isRunning(false);
+            Map<String, Path> openMap = new TreeMap<>();
+            Map<Path, Database> databaseMap = H2OpenDatabases.getDatabases();
+            for (Path path : openSupplier.get()) {
+                Path parent = path.getParent();
+                Database database = databaseMap.get(path);
+                if (parent != null && database != null && H2OpenDatabases.getSessions(database).count != 0) {
+                    openMap.putIfAbsent(parent.getFileName().toString(), path);
+                }
+            }
+            JsonBuilder builder = new JsonBuilder().beginObject();
+            builder.name("tenants").beginArray();
+            int failed = 0, tenants = 0;
+            for (String tenant : registry.getTenants()) {
+                tenants += 1;
+                builder.beginObject().field("tenant", tenant);
+                Path path = openMap.get(tenant);
+                if (!tcpRunning || path == null) {
+                    builder.field("state", path == null ? "closed" : "unreachable").endObject();
+                    continue;
+                }
+                try {
+                    long connectNanos = System.nanoTime(), queryNanos;
+                    String url = "jdbc:h2:tcp://localhost:" + tcpServer.getPort() + "/" + path + ";IFEXISTS=TRUE";
+                    try (Connection connection = DriverManager.getConnection(url, H2ContextListener.DATABASE_USER,
+                            H2ContextListener.DATABASE_PASSWORD);
+                         Statement statement = connection.createStatement()) {
+                        connectNanos = System.nanoTime() - connectNanos;
+                        statement.setQueryTimeout(timeoutSeconds);
+                        queryNanos = System.nanoTime();
+                        try (ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+                            resultSet.next();
+                        }
+                        queryNanos = System.nanoTime() - queryNanos;
+                    }
+                    builder.field("state", "open").field("database", path.getFileName().toString())
+                            .field("connectMicros", connectNanos / 1000).field("queryMicros", queryNanos / 1000)
+                            .endObject();
+                    if (errorMap.remove(tenant) != null) {
+                        logger.info("H2 health probe recovered : " + tenant);
+                    }
+                } catch (SQLException ex) {
+                    String error = String.valueOf(ex.getMessage());
+                    failed += 1;
+                    builder.field("state", "error").field("error", error).endObject();
+                    if (!error.equals(errorMap.put(tenant, error))) {
+                        logger.info("H2 health probe failed : " + tenant + " " + ex.getMessage());
+                    }
+                }
+            }
+            errorMap.keySet().retainAll(openMap.keySet());
+            builder.endArray();
+            String current = !tcpRunning ? DOWN : failed == 0 ? UP : DEGRADED;
+            if (!current.equals(status) && !(STALE.equals(status) && UP.equals(current))) {
+                logger.info("H2 health status : " + status + " -> " + current);
+            }
+            long now = System.currentTimeMillis();
+            json = builder.field("status", current).field("tcpServer", tcpRunning)
+                    .field("tcpPort", tcpServer == null ? -1 : tcpServer.getPort()).field("webServer", webRunning)
+                    .field("tenantCount", tenants).field("openTenants", openMap.size()).field("failed", failed)
+                    .field("probeMicros", (System.nanoTime() - startTime) / 1000).field("probed", now)
+                    .endObject().toString();
+            status = current;
+            probed = now;
+        } catch (IOException | RuntimeException ex) {
+            logger.info("H2 health probe error : " + ex.getMessage());
+        }
+    }
+}
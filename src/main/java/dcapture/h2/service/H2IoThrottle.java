@@ -0,0 +1,204 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FilePathWrapper;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class H2IoThrottle {
+    public static final String SCHEME = "throttle";
+    public static final int CHUNK_SIZE = 64 * 1024;
+    private static volatile H2IoThrottle current;
+    private final AtomicLong throttledBytes = new AtomicLong(), waitNanos = new AtomicLong();
+    private volatile long businessRate, offHoursRate;
+    private volatile int businessStart, businessEnd;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public H2IoThrottle(long businessRate, long offHoursRate, int businessStart, int businessEnd) {
+        setLimits(businessRate, offHoursRate, businessStart, businessEnd);
+    }
+
+    public static H2IoThrottle get(ServletContext context) {
+        return (H2IoThrottle) context.getAttribute(H2IoThrottle.class.getName());
+    }
+
+    public static void register(H2IoThrottle throttle) {
+        current = throttle;
+        FilePath.register(new ThrottleFilePath());
+    }
+
+    public void setLimits(long businessRate, long offHoursRate, int businessStart, int businessEnd) {
+        this.businessRate = Math.max(0, businessRate);
+        this.offHoursRate = Math.max(0, offHoursRate);
+        this.businessStart = Math.max(0, Math.min(24, businessStart));
+        this.businessEnd = Math.max(0, Math.min(24, businessEnd));
+    }
+
+    public long getBusinessRate() {
+        return businessRate;
+    }
+
+    public long getOffHoursRate() {
+        return offHoursRate;
+    }
+
+    public int getBusinessStart() {
+        return businessStart;
+    }
+
+    public int getBusinessEnd() {
+        return businessEnd;
+    }
+
+    public boolean isBusinessHours(LocalDateTime time) {
+        if (DayOfWeek.SATURDAY == time.getDayOfWeek() || DayOfWeek.SUNDAY == time.getDayOfWeek()) {
+            return false;
+        }
+        int hour = time.getHour();
+        if (businessEnd < businessStart) {
+            return businessStart <= hour || hour < businessEnd;
+        }
+        return businessStart <= hour && hour < businessEnd;
+    }
+
+    public long getRate() {
+        return isBusinessHours(LocalDateTime.now()) ? businessRate : offHoursRate;
+    }
+
+    public boolean isLimited() {
+        return 0 < getRate();
+    }
+
+    public void acquire(long bytes) throws InterruptedIOException {
+        long rate = getRate();
+        if (rate <= 0 || bytes <= 0) {
+            return;
+        }
+        long sleepNanos = reserve(bytes, rate, System.nanoTime());
+        throttledBytes.addAndGet(bytes);
+        if (sleepNanos <= 0) {
+            return;
+        }
+        waitNanos.addAndGet(sleepNanos);
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("I/O throttle wait interrupted");
+        }
+    }
+
+    synchronized long reserve(long bytes, long rate, long now) {
+        double burst = Math.max(CHUNK_SIZE, rate / 4.0);
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+        tokens -= bytes;
+        return tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+    }
+
+    public InputStream wrap(InputStream inputStream) {
+        return new ThrottledInputStream(inputStream, this);
+    }
+
+    public OutputStream wrap(OutputStream outputStream) {
+        return new ThrottledOutputStream(outputStream, this);
+    }
+
+    public String getPath(String fileName) {
+        return SCHEME + ":" + fileName;
+    }
+
+    public String toJson() {
+        return new JsonBuilder().beginObject().field("businessRate", businessRate / 1024)
+                .field("offHoursRate", offHoursRate / 1024).field("businessStart", businessStart)
+                .field("businessEnd", businessEnd).field("businessHours", isBusinessHours(LocalDateTime.now()))
+                .field("currentRate", getRate() / 1024).field("throttledBytes", throttledBytes.get())
+                .field("waitMillis", waitNanos.get() / 1_000_000).endObject().toString();
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final H2IoThrottle throttle;
+
+        ThrottledInputStream(InputStream inputStream, H2IoThrottle throttle) {
+            super(inputStream);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int data = super.read();
+            if (data >= 0) {
+                throttle.acquire(1);
+            }
+            return data;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, Math.min(length, CHUNK_SIZE));
+            if (count > 0) {
+                throttle.acquire(count);
+            }
+            return count;
+        }
+    }
+
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final H2IoThrottle throttle;
+
+        ThrottledOutputStream(OutputStream outputStream, H2IoThrottle throttle) {
+            super(outputStream);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public void write(int data) throws IOException {
+            throttle.acquire(1);
+            out.write(data);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, CHUNK_SIZE);
+                throttle.acquire(count);
+                out.write(buffer, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+    }
+
+    public static class ThrottleFilePath extends FilePathWrapper {
+
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public InputStream newInputStream() throws IOException {
+            InputStream inputStream = super.newInputStream();
+            H2IoThrottle throttle = current;
+            return throttle == null ? inputStream : throttle.wrap(inputStream);
+        }
+
+        @Override
+        public OutputStream newOutputStream(boolean append) throws IOException {
+            OutputStream outputStream = super.newOutputStream(append);
+            H2IoThrottle throttle = current;
+            return throttle == null ? outputStream : throttle.wrap(outputStream);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package dcapture.h2.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class H2Job {
+    public enum State {QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED}
+
+    public interface Task {
+        String execute(H2Job job) throws Exception;
+    }
+
+    private final String id, type, appsName;
+    private final long submitted;
+    private final AtomicLong bytesDone = new AtomicLong(), bytesTotal = new AtomicLong();
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private final Set<String> currentModules = ConcurrentHashMap.newKeySet();
+    private volatile long started, finished;
+    private volatile String message;
+    private volatile Future<?> future;
+
+    H2Job(String id, String type, String appsName) {
+        this.id = id;
+        this.type = type;
+        this.appsName = appsName;
+        this.submitted = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getAppsName() {
+        return appsName;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isDone() {
+        State current = state.get();
+        return State.COMPLETED == current || State.FAILED == current || State.CANCELLED == current;
+    }
+
+    public boolean isCancelled() {
+        return State.CANCELLED == state.get() || Thread.currentThread().isInterrupted();
+    }
+
+    public void setBytesTotal(long bytesTotal) {
+        this.bytesTotal.set(bytesTotal);
+    }
+
+    public void addBytesTotal(long bytes) {
+        bytesTotal.addAndGet(bytes);
+    }
+
+    public void addBytesDone(long bytes) {
+        bytesDone.addAndGet(bytes);
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal.get();
+    }
+
+    public void beginModule(String module) {
+        currentModules.add(module);
+    }
+
+    public void endModule(String module) {
+        currentModules.remove(module);
+    }
+
+    public long getEta() {
+        long done = bytesDone.get(), total = bytesTotal.get();
+        if (State.RUNNING != state.get() || done <= 0 || total <= done) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed * (total - done) / done;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    boolean cancel() {
+        if (!state.compareAndSet(State.QUEUED, State.CANCELLED)
+                && !state.compareAndSet(State.RUNNING, State.CANCELLED)) {
+            return false;
+        }
+        message = "Cancelled by request.";
+        finished = System.currentTimeMillis();
+        Future<?> current = future;
+        if (current != null) {
+            current.cancel(true);
+        }
+        return true;
+    }
+
+    boolean reject(String reason) {
+        if (!state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+            return false;
+        }
+        message = reason;
+        finished = System.currentTimeMillis();
+        return true;
+    }
+
+    void run(Task task) {
+        if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+            return;
+        }
+        started = System.currentTimeMillis();
+        try {
+            String result = task.execute(this);
+            if (state.compareAndSet(State.RUNNING, State.COMPLETED)) {
+                message = result;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (state.compareAndSet(State.RUNNING, State.CANCELLED)) {
+                message = "Cancelled : " + ex.getMessage();
+            }
+        } catch (Exception ex) {
+            if (state.compareAndSet(State.RUNNING, State.FAILED)) {
+                message = ex.getMessage();
+            }
+        } finally {
+            currentModules.clear();
+            if (finished == 0) {
+                finished = System.currentTimeMillis();
+            }
+        }
+    }
+
+    void toJson(JsonBuilder builder) {
+        builder.beginObject().field("id", id).field("type", type).field("apps", appsName)
+                .field("state", state.get().name()).field("bytesDone", bytesDone.get())
+                .field("bytesTotal", bytesTotal.get())
+                .field("module", String.join(", ", currentModules)).field("eta", getEta())
+                .field("submitted", submitted).field("started", started).field("finished", finished)
+                .field("message", message).endObject();
+    }
+}
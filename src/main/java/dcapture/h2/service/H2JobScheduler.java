@@ -0,0 +1,366 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class H2JobScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(H2JobScheduler.class);
+    public static final String ALL_TENANTS = "*";
+    private static final int MAX_WAITING = 1000;
+    private final Map<String, Cron> scheduleMap = new LinkedHashMap<>();
+    private final Map<String, H2Job> jobMap = new ConcurrentHashMap<>();
+    private final Queue<Waiting> waitingQueue = new ArrayDeque<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Random random = new Random();
+    private final String type;
+    private final H2JobService jobService;
+    private final H2TenantRegistry registry;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long jitterMillis;
+    private final ScheduledExecutorService timer;
+    private volatile Function<String, H2Job.Task> task;
+    private LocalDateTime lastTick;
+
+    public H2JobScheduler(String type, H2JobService jobService, H2TenantRegistry registry, String scheduleText,
+                          int maxConcurrent, int jitterMinutes) {
+        this.type = type;
+        this.jobService = jobService;
+        this.registry = registry;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        this.jitterMillis = Math.max(0, jitterMinutes) * 60_000L;
+        parseSchedules(scheduleText);
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2JobScheduler-" + type);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2JobScheduler get(ServletContext context, String type) {
+        return (H2JobScheduler) context.getAttribute(getAttributeName(type));
+    }
+
+    public static String getAttributeName(String type) {
+        return H2JobScheduler.class.getName() + "." + type;
+    }
+
+    private void parseSchedules(String scheduleText) {
+        if (scheduleText == null) {
+            return;
+        }
+        for (String item : scheduleText.split("[;\\n]")) {
+            int index = item.indexOf('=');
+            if (index < 1) {
+                continue;
+            }
+            String tenant = item.substring(0, index).trim(), expression = item.substring(index + 1).trim();
+            try {
+                scheduleMap.put(tenant, new Cron(expression));
+            } catch (IllegalArgumentException ex) {
+                logger.info("H2 " + type + " schedule ignored (" + tenant + ") : " + ex.getMessage());
+            }
+        }
+    }
+
+    public void setTask(Function<String, H2Job.Task> task) {
+        this.task = task;
+    }
+
+    public void start() {
+        if (scheduleMap.isEmpty()) {
+            logger.info("H2 " + type + " scheduler has no schedules.");
+            return;
+        }
+        lastTick = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        scheduleTick();
+        logger.info("H2 " + type + " scheduler started : " + scheduleMap.size() + " schedules, max concurrent "
+                + maxConcurrent + ", jitter " + (jitterMillis / 60_000L) + " minutes");
+    }
+
+    public int close() {
+        timer.shutdownNow();
+        int cancelled = 0;
+        synchronized (waitingQueue) {
+            for (Waiting waiting : waitingQueue) {
+                cancelled += waiting.job.cancel() ? 1 : 0;
+            }
+            waitingQueue.clear();
+        }
+        return cancelled;
+    }
+
+    public H2Job submit(String tenant, H2Job.Task task) {
+        H2Job job;
+        synchronized (waitingQueue) {
+            if (MAX_WAITING <= waitingQueue.size()) {
+                throw new RejectedExecutionException("H2 " + type + " queue is full, " + waitingQueue.size()
+                        + " jobs are waiting.");
+            }
+            job = jobService.create(type, tenant);
+            waitingQueue.add(new Waiting(job, task));
+        }
+        logger.info("H2 job " + job.getId() + " (" + type + "/" + tenant + ") submitted.");
+        startWaiting();
+        return job;
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Waiting waiting;
+            synchronized (waitingQueue) {
+                if (waitingQueue.isEmpty() || !permits.tryAcquire()) {
+                    return;
+                }
+                waiting = waitingQueue.poll();
+            }
+            if (waiting.job.isDone()) {
+                permits.release();
+                continue;
+            }
+            running.incrementAndGet();
+            try {
+                jobService.start(waiting.job, waiting.task, () -> {
+                    running.decrementAndGet();
+                    permits.release();
+                    startWaiting();
+                });
+            } catch (RejectedExecutionException ex) {
+                running.decrementAndGet();
+                permits.release();
+                waiting.job.reject(ex.getMessage());
+            }
+        }
+    }
+
+    private void scheduleTick() {
+        long now = System.currentTimeMillis();
+        long delay = 60_000L - now % 60_000L;
+        try {
+            timer.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // scheduler closed
+        }
+    }
+
+    private void tick() {
+        try {
+            LocalDateTime minute = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+            if (lastTick.isBefore(minute.minusHours(1))) {
+                logger.info("H2 " + type + " scheduler skipped missed schedules from " + lastTick + " to " + minute);
+                lastTick = minute.minusMinutes(1);
+            }
+            while (lastTick.isBefore(minute)) {
+                lastTick = lastTick.plusMinutes(1);
+                dispatch(getDueTenants(lastTick));
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            scheduleTick();
+        }
+    }
+
+    private List<String> getDueTenants(LocalDateTime minute) throws IOException {
+        List<String> tenantList = new ArrayList<>();
+        for (Map.Entry<String, Cron> entry : scheduleMap.entrySet()) {
+            if (!ALL_TENANTS.equals(entry.getKey()) && entry.getValue().matches(minute)) {
+                tenantList.add(entry.getKey());
+            }
+        }
+        Cron allCron = scheduleMap.get(ALL_TENANTS);
+        if (allCron != null && allCron.matches(minute)) {
+            for (String tenant : registry.getTenants()) {
+                if (!scheduleMap.containsKey(tenant)) {
+                    tenantList.add(tenant);
+                }
+            }
+        }
+        return tenantList;
+    }
+
+    private void dispatch(List<String> tenantList) {
+        if (tenantList.isEmpty()) {
+            return;
+        }
+        long slot = jitterMillis / tenantList.size();
+        for (int index = 0; index < tenantList.size(); index++) {
+            String tenant = tenantList.get(index);
+            long delay = slot * index + (slot > 0 ? (long) (random.nextDouble() * slot) : 0);
+            timer.schedule(() -> submit(tenant), delay, TimeUnit.MILLISECONDS);
+            logger.info("H2 scheduled " + type + " for " + tenant + " starts in " + (delay / 1000) + " seconds");
+        }
+    }
+
+    private void submit(String tenant) {
+        Function<String, H2Job.Task> factory = task;
+        if (factory == null) {
+            logger.info("H2 scheduled " + type + " skipped, service not ready : " + tenant);
+            return;
+        }
+        H2Job previous = jobMap.get(tenant);
+        if (previous != null && !previous.isDone()) {
+            logger.info("H2 scheduled " + type + " skipped, previous job still " + previous.getState() + " : " + tenant);
+            return;
+        }
+        try {
+            jobMap.put(tenant, submit(tenant, factory.apply(tenant)));
+        } catch (RejectedExecutionException ex) {
+            logger.info("H2 scheduled " + type + " rejected for " + tenant + " : " + ex.getMessage());
+        }
+    }
+
+    private int getWaitingCount() {
+        synchronized (waitingQueue) {
+            return waitingQueue.size();
+        }
+    }
+
+    public String toJson() {
+        LocalDateTime now = LocalDateTime.now();
+        JsonBuilder builder = new JsonBuilder();
+        builder.beginObject().field("maxConcurrent", maxConcurrent).field("running", running.get())
+                .field("waiting", getWaitingCount()).field("jitterMinutes", jitterMillis / 60_000L);
+        builder.name("schedules").beginArray();
+        for (Map.Entry<String, Cron> entry : scheduleMap.entrySet()) {
+            LocalDateTime next = entry.getValue().next(now);
+            builder.beginObject().field("tenant", entry.getKey()).field("cron", entry.getValue().expression)
+                    .field("next", next == null ? -1 : next.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                    .endObject();
+        }
+        builder.endArray();
+        builder.name("jobs").beginArray();
+        for (H2Job job : jobMap.values()) {
+            job.toJson(builder);
+        }
+        return builder.endArray().endObject().toString();
+    }
+
+    private static class Waiting {
+        private final H2Job job;
+        private final H2Job.Task task;
+
+        Waiting(H2Job job, H2Job.Task task) {
+            this.job = job;
+            this.task = task;
+        }
+    }
+
+    static class Cron {
+        private final String expression;
+        private final BitSet minutes, hours, days, months, weekDays;
+        private final boolean isAnyDay, isAnyWeekDay;
+
+        Cron(String expression) {
+            this.expression = expression;
+            String[] fields = expression.trim().split("\\s+");
+            if (5 != fields.length) {
+                throw new IllegalArgumentException("Cron expression needs 5 fields : " + expression);
+            }
+            minutes = parseField(fields[0], 0, 59);
+            hours = parseField(fields[1], 0, 23);
+            days = parseField(fields[2], 1, 31);
+            months = parseField(fields[3], 1, 12);
+            weekDays = parseField(fields[4], 0, 7);
+            if (weekDays.get(7)) {
+                weekDays.set(0);
+            }
+            isAnyDay = "*".equals(fields[2]);
+            isAnyWeekDay = "*".equals(fields[4]);
+        }
+
+        private static BitSet parseField(String field, int min, int max) {
+            BitSet bitSet = new BitSet(max + 1);
+            for (String part : field.split(",")) {
+                int step = 1, slash = part.indexOf('/');
+                if (0 < slash) {
+                    step = parseNumber(part.substring(slash + 1), 1, max);
+                    part = part.substring(0, slash);
+                }
+                int start, end;
+                if ("*".equals(part)) {
+                    start = min;
+                    end = max;
+                } else if (0 < part.indexOf('-')) {
+                    start = parseNumber(part.substring(0, part.indexOf('-')), min, max);
+                    end = parseNumber(part.substring(part.indexOf('-') + 1), start, max);
+                } else {
+                    start = parseNumber(part, min, max);
+                    end = 0 < slash ? max : start;
+                }
+                for (int value = start; value <= end; value += step) {
+                    bitSet.set(value);
+                }
+            }
+            return bitSet;
+        }
+
+        private static int parseNumber(String text, int min, int max) {
+            try {
+                int value = Integer.parseInt(text.trim());
+                if (value < min || value > max) {
+                    throw new IllegalArgumentException("Cron value " + value + " not in " + min + "-" + max);
+                }
+                return value;
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Cron value not valid : " + text);
+            }
+        }
+
+        boolean matches(LocalDateTime time) {
+            return minutes.get(time.getMinute()) && hours.get(time.getHour()) && isDayMatch(time);
+        }
+
+        private boolean isDayMatch(LocalDateTime time) {
+            if (!months.get(time.getMonthValue())) {
+                return false;
+            }
+            boolean isDay = days.get(time.getDayOfMonth());
+            boolean isWeekDay = weekDays.get(time.getDayOfWeek().getValue() % 7);
+            if (isAnyDay || isAnyWeekDay) {
+                return isDay && isWeekDay;
+            }
+            return isDay || isWeekDay;
+        }
+
+        LocalDateTime next(LocalDateTime from) {
+            LocalDateTime time = from.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+            LocalDateTime limit = time.plusYears(5);
+            while (time.isBefore(limit)) {
+                if (!isDayMatch(time)) {
+                    time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                } else if (!hours.get(time.getHour())) {
+                    time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                } else if (!minutes.get(time.getMinute())) {
+                    time = time.plusMinutes(1);
+                } else {
+                    return time;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class H2JobService {
+    private static final Logger logger = LoggerFactory.getLogger(H2JobService.class);
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Map<String, H2Job> jobMap = new LinkedHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final int historySize;
+
+    public H2JobService(int workers, int queueSize, int historySize) {
+        this.historySize = historySize;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "H2JobWorker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2JobService get(ServletContext context) {
+        return (H2JobService) context.getAttribute(H2JobService.class.getName());
+    }
+
+    public H2Job submit(String type, String appsName, H2Job.Task task) {
+        H2Job job = create(type, appsName);
+        try {
+            start(job, task, null);
+        } catch (RejectedExecutionException ex) {
+            synchronized (jobMap) {
+                jobMap.remove(job.getId());
+            }
+            throw ex;
+        }
+        logger.info("H2 job " + job.getId() + " (" + type + "/" + appsName + ") submitted.");
+        return job;
+    }
+
+    H2Job create(String type, String appsName) {
+        String id = Long.toString(System.currentTimeMillis(), 36) + "-" + sequence.incrementAndGet();
+        H2Job job = new H2Job(id, type, appsName);
+        synchronized (jobMap) {
+            jobMap.put(id, job);
+            trimHistory();
+        }
+        return job;
+    }
+
+    void start(H2Job job, H2Job.Task task, Runnable after) {
+        try {
+            job.setFuture(executor.submit(() -> {
+                try {
+                    job.run(task);
+                    logger.info("H2 job " + job.getId() + " (" + job.getType() + "/" + job.getAppsName() + ") "
+                            + job.getState());
+                } finally {
+                    if (after != null) {
+                        after.run();
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Job service is shutting down.");
+            }
+            throw new RejectedExecutionException("Job queue is full, " + executor.getQueue().size()
+                    + " jobs are waiting.");
+        }
+    }
+
+    public H2Job getJob(String id) {
+        synchronized (jobMap) {
+            return jobMap.get(id);
+        }
+    }
+
+    public List<H2Job> getJobs() {
+        synchronized (jobMap) {
+            return new ArrayList<>(jobMap.values());
+        }
+    }
+
+    public boolean cancel(String id) {
+        H2Job job = getJob(id);
+        return job != null && job.cancel();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    public int drain() {
+        executor.shutdown();
+        int cancelled = 0;
+        for (H2Job job : getJobs()) {
+            if (H2Job.State.QUEUED == job.getState() && job.cancel()) {
+                cancelled += 1;
+            }
+        }
+        return cancelled;
+    }
+
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        return executor.awaitTermination(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void trimHistory() {
+        int removable = jobMap.size() - historySize;
+        Iterator<H2Job> iterator = jobMap.values().iterator();
+        while (0 < removable && iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+                removable -= 1;
+            }
+        }
+    }
+}
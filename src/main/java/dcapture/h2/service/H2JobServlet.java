@@ -0,0 +1,50 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class H2JobServlet extends MasterHttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] pathInfoArray = getPathInfoArray(req.getPathInfo());
+        if (0 == pathInfoArray.length) {
+            sendResponse(resp, "Service not supported " + Arrays.toString(pathInfoArray));
+            return;
+        }
+        String actionId = pathInfoArray[0];
+        H2JobService jobService = H2JobService.get(req.getServletContext());
+        if ("list".equals(actionId)) {
+            boolean activeOnly = "true".equalsIgnoreCase(req.getParameter("active"));
+            JsonBuilder builder = new JsonBuilder().beginArray();
+            for (H2Job job : jobService.getJobs()) {
+                if (!activeOnly || !job.isDone()) {
+                    job.toJson(builder);
+                }
+            }
+            sendJson(resp, builder.endArray().toString());
+        } else if (2 != pathInfoArray.length) {
+            sendResponse(resp, "Service not supported " + Arrays.toString(pathInfoArray));
+        } else if ("status".equals(actionId)) {
+            H2Job job = jobService.getJob(pathInfoArray[1]);
+            if (job == null) {
+                sendError(resp, "Job not found : " + pathInfoArray[1]);
+                return;
+            }
+            JsonBuilder builder = new JsonBuilder();
+            job.toJson(builder);
+            sendJson(resp, builder.toString());
+        } else if ("cancel".equals(actionId)) {
+            if (jobService.cancel(pathInfoArray[1])) {
+                sendResponse(resp, "Job cancelled : " + pathInfoArray[1]);
+            } else {
+                sendError(resp, "Job not found or already finished : " + pathInfoArray[1]);
+            }
+        } else {
+            sendResponse(resp, "Service request not valid " + actionId);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.engine.Database;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.cache.CacheLongKeyLIRS;
+import org.h2.mvstore.db.Store;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class H2MemoryGovernor {
+    private static final Logger logger = LoggerFactory.getLogger(H2MemoryGovernor.class);
+    private final Supplier<List<Path>> openSupplier;
+    private final int budgetMb, minMb;
+    private final long intervalMillis;
+    private final Map<Path, Sample> sampleMap = new ConcurrentHashMap<>();
+    private final AtomicLong resizedCount = new AtomicLong();
+    private final ScheduledExecutorService governor;
+    private volatile long lastRun;
+    private boolean isOverBudget;
+
+    public H2MemoryGovernor(Supplier<List<Path>> openSupplier, int budgetMb, int minMb, int intervalSeconds) {
+        this.openSupplier = openSupplier;
+        this.minMb = Math.max(1, minMb);
+        this.budgetMb = budgetMb > 0 ? budgetMb
+                : (int) Math.max(this.minMb, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+        this.intervalMillis = Math.max(5, intervalSeconds) * 1000L;
+        governor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2MemoryGovernor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2MemoryGovernor get(ServletContext context) {
+        return (H2MemoryGovernor) context.getAttribute(H2MemoryGovernor.class.getName());
+    }
+
+    public void start() {
+        governor.scheduleWithFixedDelay(this::rebalance, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("H2 memory governor started, cache budget " + budgetMb + " MB, minimum " + minMb
+                + " MB per database");
+    }
+
+    public void close() {
+        governor.shutdownNow();
+    }
+
+    private void rebalance() {
+        List<Path> pathList = openSupplier.get();
+        Map<Path, Database> databaseMap = H2OpenDatabases.getDatabases();
+        sampleMap.keySet().retainAll(databaseMap.keySet());
+        List<Sample> sampleList = new ArrayList<>();
+        try {
+            for (Path path : pathList) {
+                Database database = databaseMap.get(path);
+                if (database == null) {
+                    continue;
+                }
+                try {
+                    Sample sample = sample(path, database);
+                    if (sample != null) {
+                        sampleList.add(sample);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    logger.info("H2 memory governor can not sample " + path + " : " + ex.getMessage());
+                }
+            }
+            int allocated = allocate(sampleList, budgetMb, minMb);
+            if (allocated > budgetMb && !isOverBudget) {
+                logger.info("H2 memory governor over budget : " + sampleList.size() + " open databases need "
+                        + allocated + " MB at 1 MB each, budget " + budgetMb + " MB");
+            }
+            isOverBudget = allocated > budgetMb;
+            sampleList.sort(Comparator.comparingInt(sample -> sample.targetMb - sample.cacheMb));
+            for (Sample sample : sampleList) {
+                apply(sample);
+            }
+        } finally {
+            lastRun = System.currentTimeMillis();
+        }
+    }
+
+    private Sample sample(Path path, Database database) throws IOException {
+        Store store = database.getStore();
+        MVStore mvStore = store == null ? null : store.getMvStore();
+        CacheLongKeyLIRS<?> cache = mvStore == null || mvStore.isClosed() ? null : mvStore.getCache();
+        if (cache == null) {
+            return null;
+        }
+        Sample sample = sampleMap.get(path);
+        if (sample == null || sample.mvStore != mvStore) {
+            sample = new Sample(path, mvStore);
+            sample.hits = cache.getHits();
+            sample.misses = cache.getMisses();
+            sampleMap.put(path, sample);
+        }
+        long hits = cache.getHits(), misses = cache.getMisses();
+        long hitDelta = hits < sample.hits ? hits : hits - sample.hits;
+        long missDelta = misses < sample.misses ? misses : misses - sample.misses;
+        sample.hits = hits;
+        sample.misses = misses;
+        sample.hitRatio = hitDelta + missDelta == 0 ? -1 : (int) (hitDelta * 100 / (hitDelta + missDelta));
+        sample.missRate = sample.isNew ? missDelta : (sample.missRate + missDelta) / 2;
+        sample.cacheMb = mvStore.getCacheSize();
+        sample.usedMb = mvStore.getCacheSizeUsed();
+        Path file = path.resolveSibling(path.getFileName() + ".mv.db");
+        sample.fileMb = Files.exists(file) ? (int) (Files.size(file) / (1024 * 1024)) : 0;
+        return sample;
+    }
+
+    static int allocate(List<Sample> sampleList, int budgetMb, int minMb) {
+        if (sampleList.isEmpty()) {
+            return 0;
+        }
+        minMb = Math.max(1, Math.min(minMb, budgetMb / sampleList.size()));
+        int available = budgetMb - minMb * sampleList.size();
+        List<Sample> openList = new ArrayList<>();
+        for (Sample sample : sampleList) {
+            sample.targetMb = minMb;
+            if (sample.fileMb + 1 > minMb) {
+                openList.add(sample);
+            }
+        }
+        while (available > 0 && !openList.isEmpty()) {
+            double weight = 0;
+            for (Sample sample : openList) {
+                weight += sample.missRate + 1;
+            }
+            int given = 0;
+            List<Sample> cappedList = new ArrayList<>();
+            for (Sample sample : openList) {
+                int share = (int) (available * (sample.missRate + 1) / weight);
+                int cap = sample.fileMb + 1 - sample.targetMb;
+                if (share >= cap) {
+                    share = cap;
+                    cappedList.add(sample);
+                }
+                sample.targetMb += share;
+                given += share;
+            }
+            available -= given;
+            if (cappedList.isEmpty()) {
+                break;
+            }
+            openList.removeAll(cappedList);
+        }
+        int allocated = 0;
+        for (Sample sample : sampleList) {
+            allocated += sample.targetMb;
+        }
+        return allocated;
+    }
+
+    private void apply(Sample sample) {
+        int change = sample.targetMb - sample.cacheMb;
+        if (!sample.isNew && change > 0 && (change < 2 || change * 4 < sample.cacheMb)) {
+            return;
+        }
+        sample.isNew = false;
+        if (change == 0) {
+            return;
+        }
+        try {
+            sample.mvStore.setCacheSize(sample.targetMb);
+            resizedCount.incrementAndGet();
+            logger.info("H2 cache resized : " + sample.getName() + " " + sample.cacheMb + " -> " + sample.targetMb
+                    + " MB (hit ratio " + sample.hitRatio + "%, misses " + sample.missRate + ")");
+            sample.cacheMb = sample.targetMb;
+        } catch (RuntimeException ex) {
+            logger.info("H2 cache resize error : " + sample.getName() + " " + ex.getMessage());
+        }
+    }
+
+    public String toJson() {
+        int allocated = 0;
+        JsonBuilder builder = new JsonBuilder().beginObject();
+        builder.name("databases").beginArray();
+        for (Sample sample : new TreeMap<>(sampleMap).values()) {
+            allocated += sample.cacheMb;
+            builder.beginObject().field("database", sample.getName()).field("cacheMb", sample.cacheMb)
+                    .field("usedMb", sample.usedMb).field("fileMb", sample.fileMb)
+                    .field("hitRatio", sample.hitRatio).field("missRate", sample.missRate)
+                    .field("share", budgetMb == 0 ? 0 : sample.cacheMb * 100.0 / budgetMb).endObject();
+        }
+        builder.endArray();
+        return builder.field("budgetMb", budgetMb).field("minMb", minMb).field("allocatedMb", allocated)
+                .field("intervalSeconds", intervalMillis / 1000).field("resized", resizedCount.get())
+                .field("lastRun", lastRun).endObject().toString();
+    }
+
+    static class Sample {
+        private final Path path;
+        private final MVStore mvStore;
+        private boolean isNew = true;
+        long hits, misses, missRate;
+        int hitRatio, cacheMb, usedMb, fileMb, targetMb;
+
+        Sample(Path path, MVStore mvStore) {
+            this.path = path;
+            this.mvStore = mvStore;
+        }
+
+        String getName() {
+            Path parent = path.getParent();
+            return (parent == null ? "" : parent.getFileName() + "/") + path.getFileName();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+public class H2Metrics {
+    private static final String SINGLE_DATABASE = "single";
+    private static final double[] DURATION_BUCKETS = {0.1, 0.5, 1, 5, 10, 30, 60, 300, 600, 1800, 3600};
+    private static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300};
+    private static final double[] THROUGHPUT_BUCKETS = {1e6, 5e6, 10e6, 25e6, 50e6, 100e6, 250e6, 500e6, 1e9};
+    private final Map<String, ModuleMetrics> moduleMap;
+    private final Histogram downloadDuration = new Histogram(LATENCY_BUCKETS);
+    private final LongAdder downloadBytes = new LongAdder(), downloadErrors = new LongAdder();
+
+    public H2Metrics(String[] modules) {
+        Map<String, ModuleMetrics> map = new LinkedHashMap<>();
+        for (String module : modules) {
+            map.put(module, new ModuleMetrics());
+        }
+        map.put(SINGLE_DATABASE, new ModuleMetrics());
+        moduleMap = Collections.unmodifiableMap(map);
+    }
+
+    public static H2Metrics get(ServletContext context) {
+        return (H2Metrics) context.getAttribute(H2Metrics.class.getName());
+    }
+
+    private ModuleMetrics getModule(String module) {
+        ModuleMetrics metrics = moduleMap.get(module);
+        return metrics == null ? moduleMap.get(SINGLE_DATABASE) : metrics;
+    }
+
+    public void recordBackup(String module, long millis, long sourceBytes, long writtenBytes, boolean isFailed) {
+        ModuleMetrics metrics = getModule(module);
+        if (isFailed) {
+            metrics.backupErrors.increment();
+            return;
+        }
+        metrics.backupDuration.observe(millis / 1000D);
+        metrics.backupBytes.add(writtenBytes);
+        if (millis > 0) {
+            metrics.backupThroughput.observe(sourceBytes * 1000D / millis);
+        }
+    }
+
+    public void recordRestore(String module, long millis, long bytes, boolean isFailed) {
+        ModuleMetrics metrics = getModule(module);
+        if (isFailed) {
+            metrics.restoreErrors.increment();
+            return;
+        }
+        metrics.restoreDuration.observe(millis / 1000D);
+        metrics.restoreBytes.add(bytes);
+    }
+
+    public void recordDownload(long nanos, long bytes, boolean isFailed) {
+        if (isFailed) {
+            downloadErrors.increment();
+        }
+        downloadDuration.observe(nanos / 1e9);
+        downloadBytes.add(bytes);
+    }
+
+    public void write(StringBuilder builder) {
+        writeHeader(builder, "h2_backup_duration_seconds", "histogram", "Backup duration per module.");
+        moduleMap.forEach((module, metrics) -> metrics.backupDuration.write(builder,
+                "h2_backup_duration_seconds", module));
+        writeHeader(builder, "h2_backup_throughput_bytes_per_second", "histogram",
+                "Database bytes read per second by a module backup.");
+        moduleMap.forEach((module, metrics) -> metrics.backupThroughput.write(builder,
+                "h2_backup_throughput_bytes_per_second", module));
+        writeHeader(builder, "h2_backup_written_bytes_total", "counter", "Backup bytes written per module.");
+        moduleMap.forEach((module, metrics) -> writeValue(builder, "h2_backup_written_bytes_total", module,
+                metrics.backupBytes.sum()));
+        writeHeader(builder, "h2_backup_errors_total", "counter", "Failed module backups.");
+        moduleMap.forEach((module, metrics) -> writeValue(builder, "h2_backup_errors_total", module,
+                metrics.backupErrors.sum()));
+        writeHeader(builder, "h2_restore_duration_seconds", "histogram", "Restore duration per module.");
+        moduleMap.forEach((module, metrics) -> metrics.restoreDuration.write(builder,
+                "h2_restore_duration_seconds", module));
+        writeHeader(builder, "h2_restore_read_bytes_total", "counter", "Backup bytes restored per module.");
+        moduleMap.forEach((module, metrics) -> writeValue(builder, "h2_restore_read_bytes_total", module,
+                metrics.restoreBytes.sum()));
+        writeHeader(builder, "h2_restore_errors_total", "counter", "Failed module restores.");
+        moduleMap.forEach((module, metrics) -> writeValue(builder, "h2_restore_errors_total", module,
+                metrics.restoreErrors.sum()));
+        writeHeader(builder, "h2_download_duration_seconds", "histogram", "Backup download and export latency.");
+        downloadDuration.write(builder, "h2_download_duration_seconds", null);
+        writeHeader(builder, "h2_download_bytes_total", "counter", "Backup download and export bytes sent.");
+        writeValue(builder, "h2_download_bytes_total", null, downloadBytes.sum());
+        writeHeader(builder, "h2_download_errors_total", "counter", "Failed backup downloads and exports.");
+        writeValue(builder, "h2_download_errors_total", null, downloadErrors.sum());
+    }
+
+    public static void writeJvm(StringBuilder builder) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        writeHeader(builder, "jvm_memory_used_bytes", "gauge", "JVM memory in use.");
+        builder.append("jvm_memory_used_bytes{area=\"heap\"} ").append(heap.getUsed()).append('\n');
+        builder.append("jvm_memory_used_bytes{area=\"nonheap\"} ").append(nonHeap.getUsed()).append('\n');
+        writeHeader(builder, "jvm_memory_committed_bytes", "gauge", "JVM memory committed.");
+        builder.append("jvm_memory_committed_bytes{area=\"heap\"} ").append(heap.getCommitted()).append('\n');
+        builder.append("jvm_memory_committed_bytes{area=\"nonheap\"} ").append(nonHeap.getCommitted()).append('\n');
+        writeHeader(builder, "jvm_memory_max_bytes", "gauge", "JVM maximum heap.");
+        builder.append("jvm_memory_max_bytes{area=\"heap\"} ").append(heap.getMax()).append('\n');
+        writeHeader(builder, "jvm_gc_collections_total", "counter", "Garbage collections per collector.");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            builder.append("jvm_gc_collections_total{gc=\"").append(escapeLabel(collector.getName()))
+                    .append("\"} ").append(Math.max(0, collector.getCollectionCount())).append('\n');
+        }
+        writeHeader(builder, "jvm_gc_collection_seconds_total", "counter", "Garbage collection time per collector.");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            builder.append("jvm_gc_collection_seconds_total{gc=\"").append(escapeLabel(collector.getName()))
+                    .append("\"} ").append(Math.max(0, collector.getCollectionTime()) / 1000D).append('\n');
+        }
+        writeHeader(builder, "jvm_threads_live", "gauge", "Live JVM threads.");
+        builder.append("jvm_threads_live ").append(ManagementFactory.getThreadMXBean().getThreadCount()).append('\n');
+    }
+
+    public static void writeHeader(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    public static String escapeLabel(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int index = 0; index < value.length(); index++) {
+            char ch = value.charAt(index);
+            if (ch == '\\' || ch == '"') {
+                builder.append('\\').append(ch);
+            } else if (ch == '\n') {
+                builder.append("\\n");
+            } else {
+                builder.append(ch);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void writeValue(StringBuilder builder, String name, String module, long value) {
+        builder.append(name);
+        if (module != null) {
+            builder.append("{module=\"").append(escapeLabel(module)).append("\"}");
+        }
+        builder.append(' ').append(value).append('\n');
+    }
+
+    private static class ModuleMetrics {
+        private final Histogram backupDuration = new Histogram(DURATION_BUCKETS);
+        private final Histogram backupThroughput = new Histogram(THROUGHPUT_BUCKETS);
+        private final Histogram restoreDuration = new Histogram(DURATION_BUCKETS);
+        private final LongAdder backupBytes = new LongAdder(), backupErrors = new LongAdder(),
+                restoreBytes = new LongAdder(), restoreErrors = new LongAdder();
+    }
+
+    private static class Histogram {
+        private final double[] buckets;
+        private final LongAdder[] counts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] buckets) {
+            this.buckets = buckets;
+            counts = new LongAdder[buckets.length];
+            for (int index = 0; index < buckets.length; index++) {
+                counts[index] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            for (int index = 0; index < buckets.length; index++) {
+                if (value <= buckets[index]) {
+                    counts[index].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        void write(StringBuilder builder, String name, String module) {
+            String label = module == null ? "" : "module=\"" + escapeLabel(module) + "\",";
+            long cumulative = 0;
+            for (int index = 0; index < buckets.length; index++) {
+                cumulative += counts[index].sum();
+                builder.append(name).append("_bucket{").append(label).append("le=\"").append(buckets[index])
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            long total = count.sum();
+            builder.append(name).append("_bucket{").append(label).append("le=\"+Inf\"} ").append(total).append('\n');
+            String suffix = module == null ? "" : "{module=\"" + escapeLabel(module) + "\"}";
+            builder.append(name).append("_sum").append(suffix).append(' ').append(sum.sum()).append('\n');
+            builder.append(name).append("_count").append(suffix).append(' ').append(total).append('\n');
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+public class H2MetricsServlet extends MasterHttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        StringBuilder builder = new StringBuilder(16 * 1024);
+        H2Metrics.get(getServletContext()).write(builder);
+        writeServer(builder);
+        writeTenantSizes(builder);
+        H2Metrics.writeJvm(builder);
+        sendResponse(resp, "text/plain; version=0.0.4", builder.toString());
+    }
+
+    private void writeServer(StringBuilder builder) {
+        long[] sessions = H2ContextListener.getTcpSessions(getServletContext());
+        H2Metrics.writeHeader(builder, "h2_tcp_server_up", "gauge", "1 when the H2 TCP server is running.");
+        builder.append("h2_tcp_server_up ").append(sessions == null ? 0 : 1).append('\n');
+        if (sessions != null) {
+            H2Metrics.writeHeader(builder, "h2_tcp_sessions", "gauge", "Open H2 TCP server sessions.");
+            builder.append("h2_tcp_sessions ").append(sessions[0]).append('\n');
+            H2Metrics.writeHeader(builder, "h2_tcp_databases", "gauge", "Databases with open TCP sessions.");
+            builder.append("h2_tcp_databases ").append(sessions[1]).append('\n');
+        }
+        H2JobService jobService = H2JobService.get(getServletContext());
+        H2Metrics.writeHeader(builder, "h2_jobs_active", "gauge", "Running and queued backup and restore jobs.");
+        builder.append("h2_jobs_active ").append(jobService.getActiveCount()).append('\n');
+    }
+
+    private void writeTenantSizes(StringBuilder builder) throws IOException {
+        H2TenantRegistry registry = H2TenantRegistry.get(getServletContext());
+        H2Metrics.writeHeader(builder, "h2_tenant_database_bytes", "gauge", "Database file size per tenant.");
+        for (String tenant : registry.getTenants()) {
+            Path tenantPath = registry.getTenantPath(tenant);
+            long size = 0;
+            try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(tenantPath, "*.db")) {
+                for (Path file : fileStream) {
+                    try {
+                        size += Files.size(file);
+                    } catch (NoSuchFileException ex) {
+                        // file removed while listing
+                    }
+                }
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+            builder.append("h2_tenant_database_bytes{tenant=\"").append(H2Metrics.escapeLabel(tenant)).append("\"} ")
+                    .append(size).append('\n');
+        }
+        H2Metrics.writeHeader(builder, "h2_volume_usable_bytes", "gauge", "Usable bytes per data volume.");
+        for (Path volume : registry.getVolumes()) {
+            builder.append("h2_volume_usable_bytes{volume=\"").append(H2Metrics.escapeLabel(volume.toString()))
+                    .append("\"} ").append(Files.getFileStore(volume).getUsableSpace()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package dcapture.h2.service;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class H2OnlineBackup {
+    private static final String PROBE_TABLE = "DCAPTURE_BACKUP_PROBE";
+    private static final long STALL_THRESHOLD_NANOS = 50_000_000L;
+    private final long probeMillis;
+
+    public H2OnlineBackup(long probeMillis) {
+        this.probeMillis = probeMillis;
+    }
+
+    public interface Action {
+        void run(Connection connection) throws SQLException, IOException;
+    }
+
+    public Result execute(Connection backupConn, Connection probeConn, Action action)
+            throws SQLException, IOException {
+        try (Statement statement = probeConn.createStatement()) {
+            statement.execute("CREATE LOCAL TEMPORARY TABLE " + PROBE_TABLE
+                    + "(ID INT PRIMARY KEY, VAL BIGINT)");
+            try {
+                return executeProbed(backupConn, probeConn, action);
+            } finally {
+                statement.execute("DROP TABLE " + PROBE_TABLE);
+            }
+        }
+    }
+
+    private Result executeProbed(Connection backupConn, Connection probeConn, Action action)
+            throws SQLException, IOException {
+        Probe baseline = new Probe(probeConn);
+        baseline.run(probeMillis * 1_000_000L);
+        if (baseline.error != null) {
+            throw baseline.error;
+        }
+        Probe during = new Probe(probeConn);
+        Thread probeThread = new Thread(during::run, "H2OnlineBackupProbe");
+        probeThread.setDaemon(true);
+        probeThread.start();
+        Result result = new Result();
+        long startTime = System.nanoTime();
+        try {
+            action.run(backupConn);
+        } finally {
+            result.duration = (System.nanoTime() - startTime) / 1_000_000L;
+            during.running.set(false);
+            try {
+                probeThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        result.blockedMillis = during.stalledNanos / 1_000_000L;
+        result.maxStallMillis = during.maxNanos / 1_000_000L;
+        double baselineRate = baseline.getRate(), duringRate = during.getRate();
+        result.baselineRate = baselineRate;
+        result.backupRate = duringRate;
+        if (baselineRate > 0) {
+            result.throughputLoss = Math.max(0, Math.min(100, 100 * (1 - duringRate / baselineRate)));
+        }
+        return result;
+    }
+
+    public static class Result {
+        private long duration, blockedMillis, maxStallMillis;
+        private double baselineRate, backupRate, throughputLoss;
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        public long getMaxStallMillis() {
+            return maxStallMillis;
+        }
+
+        public double getBaselineRate() {
+            return baselineRate;
+        }
+
+        public double getBackupRate() {
+            return backupRate;
+        }
+
+        public double getThroughputLoss() {
+            return throughputLoss;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("writes blocked %d ms (max stall %d ms), throughput %.0f/s to %.0f/s (%.1f%% lost)",
+                    blockedMillis, maxStallMillis, baselineRate, backupRate, throughputLoss);
+        }
+    }
+
+    private static class Probe {
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Connection connection;
+        private long count, elapsedNanos, stalledNanos, maxNanos;
+        private SQLException error;
+
+        Probe(Connection connection) {
+            this.connection = connection;
+        }
+
+        void run() {
+            run(Long.MAX_VALUE);
+        }
+
+        void run(long limitNanos) {
+            long startTime = System.nanoTime();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "MERGE INTO " + PROBE_TABLE + " KEY(ID) VALUES (1, ?)")) {
+                while (running.get() && System.nanoTime() - startTime < limitNanos) {
+                    long writeTime = System.nanoTime();
+                    statement.setLong(1, count);
+                    statement.executeUpdate();
+                    long nanos = System.nanoTime() - writeTime;
+                    if (nanos > STALL_THRESHOLD_NANOS) {
+                        stalledNanos += nanos;
+                    }
+                    maxNanos = Math.max(maxNanos, nanos);
+                    count += 1;
+                }
+            } catch (SQLException ex) {
+                error = ex;
+            }
+            elapsedNanos = System.nanoTime() - startTime;
+        }
+
+        double getRate() {
+            return elapsedNanos == 0 ? 0 : count * 1_000_000_000D / elapsedNanos;
+        }
+    }
+}
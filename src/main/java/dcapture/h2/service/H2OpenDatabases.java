@@ -0,0 +1,96 @@
+package dcapture.h2.service;
+
+import org.h2.engine.Database;
+import org.h2.engine.Engine;
+import org.h2.engine.SessionLocal;
+import org.h2.util.JSR310Utils;
+import org.h2.value.ValueTimestampTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class H2OpenDatabases {
+    private static final Logger logger = LoggerFactory.getLogger(H2OpenDatabases.class);
+    private static final Field DATABASES, DATABASE;
+
+    static {
+        Field databases = null, database = null;
+        try {
+            databases = Engine.class.getDeclaredField("DATABASES");
+            databases.setAccessible(true);
+            database = Class.forName(Engine.class.getName() + "$DatabaseHolder").getDeclaredField("database");
+            database.setAccessible(true);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.info("H2 open database lookup not available : " + ex.getMessage());
+            databases = null;
+            database = null;
+        }
+        DATABASES = databases;
+        DATABASE = database;
+    }
+
+    private H2OpenDatabases() {
+    }
+
+    static Map<Path, Database> getDatabases() {
+        Map<Path, Database> databaseMap = new LinkedHashMap<>();
+        if (DATABASES == null) {
+            return databaseMap;
+        }
+        try {
+            Map<?, ?> holderMap = (Map<?, ?>) DATABASES.get(null);
+            List<Object> holderList;
+            synchronized (holderMap) {
+                holderList = new ArrayList<>(holderMap.values());
+            }
+            for (Object holder : holderList) {
+                Database database = (Database) DATABASE.get(holder);
+                if (database != null && database.isPersistent() && !database.isClosing()) {
+                    databaseMap.put(Paths.get(database.getDatabasePath()).toAbsolutePath().normalize(), database);
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            logger.info("H2 open database lookup error : " + ex.getMessage());
+        }
+        return databaseMap;
+    }
+
+    static Database getDatabase(Path path) {
+        return getDatabases().get(path.toAbsolutePath().normalize());
+    }
+
+    static Sessions getSessions(Database database) {
+        Sessions sessions = new Sessions();
+        for (SessionLocal session : database.getSessions(false)) {
+            if (session.isClosed()) {
+                continue;
+            }
+            sessions.count += 1;
+            sessions.isTcp |= session.getNetworkConnectionInfo() != null;
+            SessionLocal.State state = session.getState();
+            if (SessionLocal.State.RUNNING == state || SessionLocal.State.BLOCKED == state
+                    || session.getCurrentCommand() != null || session.hasPendingTransaction()) {
+                sessions.isBusy = true;
+            }
+            ValueTimestampTimeZone time = session.getCommandStartOrEnd();
+            if (time != null) {
+                sessions.lastActive = Math.max(sessions.lastActive,
+                        JSR310Utils.valueToInstant(time, null).toEpochMilli());
+            }
+        }
+        return sessions;
+    }
+
+    static class Sessions {
+        int count;
+        boolean isTcp, isBusy;
+        long lastActive;
+    }
+}
@@ -0,0 +1,288 @@
+package dcapture.h2.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class H2ParallelZipOutput implements AutoCloseable {
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int FLAGS = 0x0808;
+    private final OutputStream outputStream;
+    private final ExecutorService executor;
+    private final int level, blockSize, maxPending;
+    private final List<Entry> entryList = new ArrayList<>();
+    private final byte[] headerBuffer = new byte[8];
+    private long written;
+    private boolean finished;
+
+    public H2ParallelZipOutput(OutputStream outputStream, ExecutorService executor, int threads, int level,
+                               int blockSize) {
+        this.outputStream = outputStream;
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = Math.max(DICTIONARY_SIZE, blockSize);
+        this.maxPending = Math.max(1, threads) * 2;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long writeEntry(String name, InputStream inputStream, long expectedSize) throws IOException {
+        Entry entry = new Entry(name, written);
+        entry.isZip64 = expectedSize < 0 || expectedSize >= ZIP64_LIMIT;
+        writeLocalHeader(entry);
+        CRC32 crc = new CRC32();
+        Deque<Future<byte[]>> pendingList = new ArrayDeque<>();
+        byte[] dictionary = null;
+        byte[] block = inputStream.readNBytes(blockSize);
+        try {
+            while (true) {
+                byte[] next = block.length == blockSize ? inputStream.readNBytes(blockSize) : new byte[0];
+                boolean isLast = next.length == 0;
+                crc.update(block);
+                entry.size += block.length;
+                pendingList.add(submit(block, dictionary, isLast));
+                if (block.length == blockSize) {
+                    dictionary = Arrays.copyOfRange(block, blockSize - DICTIONARY_SIZE, blockSize);
+                }
+                while (!pendingList.isEmpty() && (isLast || pendingList.size() >= maxPending)) {
+                    byte[] compressed = getBlock(pendingList.poll());
+                    write(compressed, compressed.length);
+                    entry.compressedSize += compressed.length;
+                }
+                if (isLast) {
+                    break;
+                }
+                block = next;
+            }
+        } finally {
+            pendingList.forEach(future -> future.cancel(true));
+        }
+        entry.crc = crc.getValue();
+        entry.isZip64 |= entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+        writeDataDescriptor(entry);
+        entryList.add(entry);
+        return entry.size;
+    }
+
+    private Future<byte[]> submit(byte[] block, byte[] dictionary, boolean isLast) {
+        Callable<byte[]> task = () -> deflate(block, dictionary, isLast);
+        if (executor == null) {
+            FutureTask<byte[]> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return executor.submit(task);
+    }
+
+    private byte[] getBlock(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Backup compression interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException("Backup compression error : " + ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    private byte[] deflate(byte[] block, byte[] dictionary, boolean isLast) {
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream blockStream = new ByteArrayOutputStream(block.length / 2 + 64);
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(block);
+            if (isLast) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    blockStream.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    blockStream.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        return blockStream.toByteArray();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        writeInt(0x04034b50L);
+        writeShort(45);
+        writeShort(FLAGS);
+        writeShort(Deflater.DEFLATED);
+        writeInt(entry.dosTime);
+        writeInt(0);
+        writeInt(entry.isZip64 ? ZIP64_LIMIT : 0);
+        writeInt(entry.isZip64 ? ZIP64_LIMIT : 0);
+        writeShort(entry.name.length);
+        writeShort(entry.isZip64 ? 20 : 0);
+        write(entry.name, entry.name.length);
+        if (entry.isZip64) {
+            writeShort(0x0001);
+            writeShort(16);
+            writeLong(0);
+            writeLong(0);
+        }
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        writeInt(0x08074b50L);
+        writeInt(entry.crc);
+        if (entry.isZip64) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.size);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+        }
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean isOffsetZip64 = entry.offset >= ZIP64_LIMIT;
+        int extraLength = (entry.isZip64 ? 16 : 0) + (isOffsetZip64 ? 8 : 0);
+        writeInt(0x02014b50L);
+        writeShort(45);
+        writeShort(45);
+        writeShort(FLAGS);
+        writeShort(Deflater.DEFLATED);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.isZip64 ? ZIP64_LIMIT : entry.compressedSize);
+        writeInt(entry.isZip64 ? ZIP64_LIMIT : entry.size);
+        writeShort(entry.name.length);
+        writeShort(extraLength == 0 ? 0 : extraLength + 4);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(isOffsetZip64 ? ZIP64_LIMIT : entry.offset);
+        write(entry.name, entry.name.length);
+        if (extraLength != 0) {
+            writeShort(0x0001);
+            writeShort(extraLength);
+            if (entry.isZip64) {
+                writeLong(entry.size);
+                writeLong(entry.compressedSize);
+            }
+            if (isOffsetZip64) {
+                writeLong(entry.offset);
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        long directoryOffset = written;
+        for (Entry entry : entryList) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = written - directoryOffset;
+        int count = entryList.size();
+        boolean isZip64 = count >= 0xFFFF || directoryOffset >= ZIP64_LIMIT || directorySize >= ZIP64_LIMIT;
+        if (isZip64) {
+            long zip64Offset = written;
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(directorySize);
+            writeLong(directoryOffset);
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64Offset);
+            writeInt(1);
+        }
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(isZip64 ? 0xFFFF : count);
+        writeShort(isZip64 ? 0xFFFF : count);
+        writeInt(isZip64 ? ZIP64_LIMIT : directorySize);
+        writeInt(isZip64 ? ZIP64_LIMIT : directoryOffset);
+        writeShort(0);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        headerBuffer[0] = (byte) value;
+        headerBuffer[1] = (byte) (value >> 8);
+        write(headerBuffer, 2);
+    }
+
+    private void writeInt(long value) throws IOException {
+        for (int index = 0; index < 4; index++) {
+            headerBuffer[index] = (byte) (value >> (index * 8));
+        }
+        write(headerBuffer, 4);
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int index = 0; index < 8; index++) {
+            headerBuffer[index] = (byte) (value >> (index * 8));
+        }
+        write(headerBuffer, 8);
+    }
+
+    private void write(byte[] data, int length) throws IOException {
+        outputStream.write(data, 0, length);
+        written += length;
+    }
+
+    private static class Entry {
+        private final byte[] name;
+        private final long offset, dosTime;
+        private long crc, size, compressedSize;
+        private boolean isZip64;
+
+        Entry(String name, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.offset = offset;
+            LocalDateTime time = LocalDateTime.now();
+            this.dosTime = ((long) (time.getYear() - 1980) << 25) | ((long) time.getMonthValue() << 21)
+                    | ((long) time.getDayOfMonth() << 16) | ((long) time.getHour() << 11)
+                    | ((long) time.getMinute() << 5) | (time.getSecond() >> 1);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package dcapture.h2.service;
 
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.h2.engine.Constants;
+import org.h2.store.FileLister;
 import org.h2.tools.Restore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,14 +13,41 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class H2RestoreServlet extends MasterHttpServlet {
     private static final Logger logger = LoggerFactory.getLogger(H2RestoreServlet.class);
+    private static final String STAGING_SUFFIX = ".staging-";
+    private static final long SNAPSHOT_MARGIN = 60 * 1000;
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private ExecutorService moduleExecutor;
+    private H2Metrics metrics;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -31,94 +61,344 @@ public class H2RestoreServlet extends MasterHttpServlet {
         String actionId = pathInfoArray[0], appsName = pathInfoArray[1];
         String backupRoot = req.getServletContext().getInitParameter("database.backup");
         if ("execute".equals(actionId)) {
-            String databaseRoot = req.getServletContext().getInitParameter("database.data");
-            databaseRoot = getDirectory(databaseRoot, appsName);
+            String databaseRoot = getTenantDirectory(appsName);
             String backUpRoot = getDirectory(backupRoot, appsName);
             String date2 = req.getParameter("date");
-            if (isSingleDatabase) {
-                performRestore(resp, appsName, Paths.get(backUpRoot), date2, Paths.get(databaseRoot));
-            } else {
-                performRestoreByModule(resp, appsName, Paths.get(backUpRoot), date2, Paths.get(databaseRoot));
+            Path databasePath = Paths.get(databaseRoot), backupPath = Paths.get(backUpRoot);
+            long untilMillis = 0;
+            String untilText = req.getParameter("until");
+            if (untilText != null && !untilText.isBlank()) {
+                try {
+                    untilMillis = LocalDateTime.parse(untilText).atZone(ZoneId.systemDefault()).toInstant()
+                            .toEpochMilli();
+                } catch (DateTimeParseException ex) {
+                    sendError(resp, "Restore until not valid : " + untilText);
+                    return;
+                }
+                if (isSingleDatabase || H2ChangeCapture.get(getServletContext()) == null) {
+                    sendError(resp, "Point in time restore needs change capture and a module restore");
+                    return;
+                }
             }
+            long until = untilMillis;
+            submitJob(resp, "restore", appsName, job -> isSingleDatabase
+                    ? performRestore(job, appsName, backupPath, date2, databasePath)
+                    : performRestoreByModule(job, appsName, backupPath, date2, databasePath, until));
+        } else if ("rollback".equals(actionId)) {
+            Path databasePath = H2TenantRegistry.get(getServletContext()).getTenantPath(appsName);
+            submitJob(resp, "rollback", appsName, job -> performRollback(appsName, databasePath));
         } else {
             sendResponse(resp, "Service request not valid " + actionId);
         }
     }
 
-    private void performRestoreByModule(HttpServletResponse resp, String appsName, Path backupFolder,
-                                        String date, Path databaseRoot) throws IOException {
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        int workers = H2ContextListener.getInitParameter(getServletContext(), "restore.workers",
+                getDatabaseNames().length);
+        moduleExecutor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "H2RestoreWorker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics = H2Metrics.get(getServletContext());
+        logger.info("H2 restore module workers : " + workers);
+    }
+
+    @Override
+    public void destroy() {
+        if (moduleExecutor != null) {
+            moduleExecutor.shutdownNow();
+        }
+        super.destroy();
+    }
+
+    private String performRestoreByModule(H2Job job, String appsName, Path backupFolder,
+                                          String date, Path databaseRoot, long untilMillis) throws Exception {
         String pathText = getDirectory(backupFolder.toString(), date);
         Path path = Paths.get(pathText);
         if (!Files.exists(path)) {
-            sendResponse(resp, "Application backup not found on : " + date);
-            return;
+            throw new IOException("Application backup not found on : " + date);
         }
         Path restoreDatePath = backupFolder.resolve(date);
         if (!Files.exists(restoreDatePath)) {
-            sendResponse(resp, "Application backup not found at expected date : " + date);
-            return;
+            throw new IOException("Application backup not found at expected date : " + date);
         }
+        H2ChunkStore chunkStore = getChunkStore(backupFolder.getParent().toString(), appsName);
         Map<String, Path> databasePathMap = new HashMap<>();
+        Map<String, Long> sizeMap = new HashMap<>();
         for (String database : getDatabaseNames()) {
             Path databasePath = restoreDatePath.resolve(database + ".zip");
             if (!Files.exists(databasePath)) {
-                sendResponse(resp, "Application database (" + database + ") backup not found to restore.");
-                return;
+                databasePath = restoreDatePath.resolve(database + H2ChunkStore.MANIFEST_SUFFIX);
+            }
+            if (!Files.exists(databasePath)) {
+                throw new IOException("Application database (" + database + ") backup not found to restore.");
             }
             databasePathMap.put(database, databasePath);
+            sizeMap.put(database, getRestoreSize(chunkStore, databasePath));
+            job.addBytesTotal(sizeMap.get(database));
         }
-        try {
-            StringBuilder builder = new StringBuilder(appsName);
-            builder.append(" : Application databases restored at ").append(date).append("\n");
+        H2ChangeCapture capture = H2ChangeCapture.get(getServletContext());
+        if (untilMillis != 0) {
+            capture.drain(appsName);
+        }
+        try (H2TenantRegistry.Lease lease = leaseTenant(appsName, "restore")) {
+            lockModules(lease, databaseRoot, databasePathMap.keySet());
+            long startTime = System.currentTimeMillis();
+            Path stagingPath = databaseRoot.resolveSibling(appsName + STAGING_SUFFIX + startTime);
+            Files.createDirectories(stagingPath);
+            List<Future<String>> futureList = new ArrayList<>();
             for (Map.Entry<String, Path> entry : databasePathMap.entrySet()) {
-                Restore.main("-dir", databaseRoot.toString(),
-                        "-file", entry.getValue().toString(), "-db", entry.getKey());
-                builder.append(entry.getKey()).append(", ");
+                futureList.add(moduleExecutor.submit(() -> {
+                    job.beginModule(entry.getKey());
+                    long moduleTime = System.currentTimeMillis();
+                    boolean isFailed = true;
+                    try {
+                        String result = restoreModule(chunkStore, entry.getKey(), entry.getValue(), stagingPath,
+                                job, sizeMap.get(entry.getKey()));
+                        if (untilMillis != 0) {
+                            result += ", " + replayModule(capture, appsName, entry.getKey(), entry.getValue(),
+                                    chunkStore, stagingPath, untilMillis);
+                        }
+                        isFailed = false;
+                        return result;
+                    } finally {
+                        metrics.recordRestore(entry.getKey(), System.currentTimeMillis() - moduleTime,
+                                Files.size(entry.getValue()), isFailed);
+                        job.endModule(entry.getKey());
+                    }
+                }));
             }
-            if (0 > builder.lastIndexOf(", ")) {
-                builder.replace(builder.length() - 2, builder.length(), "");
+            StringBuilder builder = new StringBuilder(appsName);
+            builder.append(" : Application databases restored at ").append(date);
+            if (untilMillis != 0) {
+                builder.append(", changes replayed until ").append(Instant.ofEpochMilli(untilMillis)
+                        .atZone(ZoneId.systemDefault()).toLocalDateTime());
+            }
+            builder.append("\n");
+            List<String> errorList = new ArrayList<>();
+            try {
+                for (Future<String> future : futureList) {
+                    try {
+                        builder.append(future.get()).append("\n");
+                    } catch (ExecutionException ex) {
+                        errorList.add(ex.getCause().getMessage());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                futureList.forEach(future -> future.cancel(true));
+                deleteDirectory(stagingPath);
+                throw ex;
             }
+            if (!errorList.isEmpty()) {
+                deleteDirectory(stagingPath);
+                logger.info("Application restore error : " + appsName + " " + errorList);
+                throw new SQLException("Application restore error : " + String.join("\n", errorList));
+            }
+            swapModules(appsName, stagingPath, databaseRoot, lease);
+            builder.append("Restore time ").append(System.currentTimeMillis() - startTime).append(" ms, previous files kept at ")
+                    .append(getRollbackPath(databaseRoot).getFileName());
             logger.info(builder.toString());
-            sendResponse(resp, builder.toString());
+            return builder.toString();
+        }
+    }
+
+    private String restoreModule(H2ChunkStore chunkStore, String database, Path backupPath, Path stagingPath,
+                                 H2Job job, long size) throws IOException, SQLException {
+        long startTime = System.currentTimeMillis();
+        if (backupPath.toString().endsWith(H2ChunkStore.MANIFEST_SUFFIX)) {
+            chunkStore.restore(chunkStore.readManifest(backupPath), stagingPath, job);
+        } else {
+            Restore.main("-dir", H2IoThrottle.get(getServletContext()).getPath(stagingPath.toString()),
+                    "-file", backupPath.toString(), "-db", database);
+            job.addBytesDone(size);
+        }
+        String url = "jdbc:h2:" + stagingPath.resolve(database).toAbsolutePath() + ";IFEXISTS=TRUE";
+        try (Connection connection = DriverManager.getConnection(url, H2ContextListener.DATABASE_USER,
+                H2ContextListener.DATABASE_PASSWORD);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES")) {
+            resultSet.next();
         } catch (SQLException ex) {
-            logger.info(ex.getMessage());
-            if (logger.isDebugEnabled()) {
-                ex.printStackTrace();
+            throw new SQLException(database + " : restored database can not be opened, " + ex.getMessage(), ex);
+        }
+        return database + " : " + (System.currentTimeMillis() - startTime) + " ms";
+    }
+
+    private static long getRestoreSize(H2ChunkStore chunkStore, Path backupPath) throws IOException {
+        if (backupPath.toString().endsWith(H2ChunkStore.MANIFEST_SUFFIX)) {
+            return chunkStore.readManifest(backupPath).getSize();
+        }
+        long size = 0;
+        try (ZipFile zipFile = new ZipFile(backupPath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                size += Math.max(0, entries.nextElement().getSize());
             }
-            sendError(resp, "Application restore error : " + ex.getMessage());
         }
+        return size;
     }
 
-    private void performRestore(HttpServletResponse resp, String appsName, Path backupFolder,
-                                String date, Path databaseRoot) throws IOException {
+    private String replayModule(H2ChangeCapture capture, String appsName, String database, Path backupPath,
+                                H2ChunkStore chunkStore, Path stagingPath, long untilMillis)
+            throws IOException, SQLException {
+        long snapshotMillis = getSnapshotTime(chunkStore, backupPath) - SNAPSHOT_MARGIN;
+        if (untilMillis <= snapshotMillis) {
+            throw new SQLException(database + " : restore until is before the backup time "
+                    + Instant.ofEpochMilli(snapshotMillis + SNAPSHOT_MARGIN));
+        }
+        String url = "jdbc:h2:" + stagingPath.resolve(database).toAbsolutePath() + ";IFEXISTS=TRUE";
+        try (Connection connection = DriverManager.getConnection(url, H2ContextListener.DATABASE_USER,
+                H2ContextListener.DATABASE_PASSWORD)) {
+            return capture.replay(connection, appsName, database, snapshotMillis, untilMillis);
+        } catch (SQLException ex) {
+            throw new SQLException(database + " : change log replay failed, " + ex.getMessage(), ex);
+        }
+    }
+
+    private long getSnapshotTime(H2ChunkStore chunkStore, Path backupPath) throws IOException {
+        if (backupPath.toString().endsWith(H2ChunkStore.MANIFEST_SUFFIX)) {
+            long created = chunkStore.readManifest(backupPath).getCreated();
+            if (created != 0) {
+                return created;
+            }
+        } else {
+            long time = Long.MAX_VALUE;
+            try (ZipFile zipFile = new ZipFile(backupPath.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    long entryTime = entries.nextElement().getTime();
+                    if (entryTime > 0) {
+                        time = Math.min(time, entryTime);
+                    }
+                }
+            }
+            if (time != Long.MAX_VALUE) {
+                return time;
+            }
+        }
+        LocalDate date = H2BackupCatalog.parseDate(backupPath.getParent().getFileName().toString());
+        return date == null ? 0 : date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void lockModules(H2TenantRegistry.Lease lease, Path directory, Collection<String> databases)
+            throws IOException {
+        for (String database : databases) {
+            Path file = directory.resolve(database + Constants.SUFFIX_MV_FILE);
+            if (Files.exists(file)) {
+                lease.lock(file);
+            }
+        }
+    }
+
+    private void swapModules(String appsName, Path sourcePath, Path databaseRoot, H2TenantRegistry.Lease lease)
+            throws IOException {
+        List<String> databaseList = new ArrayList<>();
+        for (String database : getDatabaseNames()) {
+            if (Files.exists(sourcePath.resolve(database + Constants.SUFFIX_MV_FILE))) {
+                databaseList.add(database);
+            }
+        }
+        lockModules(lease, databaseRoot, databaseList);
+        Files.createDirectories(databaseRoot);
+        linkOtherFiles(databaseRoot, sourcePath, databaseList);
+        Path rollbackPath = getRollbackPath(databaseRoot);
+        try (H2SwapJournal journal = H2SwapJournal.begin(databaseRoot, sourcePath, rollbackPath)) {
+            journal.swap();
+        } finally {
+            lease.unlock();
+        }
+        logger.info(appsName + " : restored databases switched in " + databaseList + ", previous files at "
+                + rollbackPath);
+    }
+
+    private void linkOtherFiles(Path databaseRoot, Path sourcePath, List<String> databaseList) throws IOException {
+        List<Path> moduleFileList = new ArrayList<>();
+        for (String database : databaseList) {
+            for (Path file : getModuleFiles(databaseRoot, database)) {
+                moduleFileList.add(databaseRoot.resolve(file.getFileName()));
+            }
+        }
+        List<Path> fileList;
+        try (Stream<Path> stream = Files.walk(databaseRoot)) {
+            fileList = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : fileList) {
+            Path target = sourcePath.resolve(databaseRoot.relativize(file).toString());
+            if (moduleFileList.contains(file) || Files.exists(target)) {
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.createLink(target, file);
+            } catch (UnsupportedOperationException | IOException ex) {
+                Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    private List<Path> getModuleFiles(Path directory, String database) {
+        List<Path> fileList = new ArrayList<>();
+        for (String fileName : FileLister.getDatabaseFiles(directory.toString(), database, true)) {
+            fileList.add(Paths.get(fileName));
+        }
+        return fileList;
+    }
+
+    private String performRollback(String appsName, Path databaseRoot) throws IOException {
+        Path rollbackPath = getRollbackPath(databaseRoot);
+        if (!Files.exists(rollbackPath)) {
+            throw new IOException("Application restore rollback not found : " + appsName);
+        }
+        try (H2TenantRegistry.Lease lease = leaseTenant(appsName, "rollback")) {
+            Path currentPath = databaseRoot.resolveSibling(appsName + STAGING_SUFFIX + System.currentTimeMillis());
+            Files.move(rollbackPath, currentPath, StandardCopyOption.ATOMIC_MOVE);
+            swapModules(appsName, currentPath, databaseRoot, lease);
+        }
+        return appsName + " : Application databases rolled back to the files before the last restore.";
+    }
+
+    private Path getRollbackPath(Path databaseRoot) {
+        return databaseRoot.resolveSibling(databaseRoot.getFileName() + ".rollback");
+    }
+
+    private String performRestore(H2Job job, String appsName, Path backupFolder,
+                                  String date, Path databaseRoot) throws IOException, SQLException {
         String pathText = getDirectory(backupFolder.toString(), date);
         Path path = Paths.get(pathText);
         if (!Files.exists(path)) {
-            sendResponse(resp, "Application backup not found on : " + date);
-            return;
+            throw new IOException("Application backup not found on : " + date);
         }
         Path restoreDatePath = backupFolder.resolve(date);
         if (!Files.exists(restoreDatePath)) {
-            sendResponse(resp, "Application backup not found at expected date : " + date);
-            return;
+            throw new IOException("Application backup not found at expected date : " + date);
         }
         Path databasePath = restoreDatePath.resolve(appsName + ".zip");
         if (!Files.exists(databasePath)) {
-            sendResponse(resp, "Application database (" + appsName + ") backup not found to restore.");
-            return;
+            throw new IOException("Application database (" + appsName + ") backup not found to restore.");
         }
+        job.setBytesTotal(getRestoreSize(null, databasePath));
+        job.beginModule(appsName);
+        long startTime = System.currentTimeMillis();
+        H2TenantRegistry.Lease lease = leaseTenant(appsName, "restore");
         try {
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            String msg = appsName + " : Application databases restored at " + simpleDateFormat.format(date);
-            Restore.main("-dir", databaseRoot.toString(),
+            String msg = appsName + " : Application databases restored at " + date;
+            Restore.main("-dir", H2IoThrottle.get(getServletContext()).getPath(databaseRoot.toString()),
                     "-file", databasePath.toString(), "-db", appsName);
-            sendResponse(resp, msg);
+            job.addBytesDone(job.getBytesTotal());
+            metrics.recordRestore(appsName, System.currentTimeMillis() - startTime, job.getBytesTotal(), false);
+            return msg;
         } catch (SQLException ex) {
+            metrics.recordRestore(appsName, System.currentTimeMillis() - startTime, 0, true);
             logger.info(ex.getMessage());
             if (logger.isDebugEnabled()) {
                 ex.printStackTrace();
             }
-            sendError(resp, "Application restore error : " + ex.getMessage());
+            throw new SQLException("Application restore error : " + ex.getMessage(), ex);
+        } finally {
+            lease.close();
         }
     }
 }
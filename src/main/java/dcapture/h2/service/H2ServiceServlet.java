@@ -1,17 +1,28 @@
 package dcapture.h2.service;
 
-import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
-public class H2ServiceServlet extends HttpServlet {
+public class H2ServiceServlet extends MasterHttpServlet {
     private static final Logger logger = LoggerFactory.getLogger(H2ServiceServlet.class);
-    private static final String ENCODING = "UTF-8";
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private ExecutorService provisionExecutor;
+    private H2TenantProvisioner provisioner;
+    private H2Compactor compactor;
+    private H2TenantRegistry registry;
+    private int compactBudget;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -24,6 +35,45 @@ public class H2ServiceServlet extends HttpServlet {
             }
             logger.info(info1);
             sendResponse(resp, info1);
+        } else if("/provision".equals(req.getPathInfo())) {
+            performProvision(resp, H2TenantProvisioner.parseNames(req.getParameter("names")));
+        } else if("/pools".equals(req.getPathInfo())) {
+            sendResponse(resp, "application/json", H2ConnectionPools.get(req.getServletContext()).toJson());
+        } else if("/compact".equals(req.getPathInfo())) {
+            performCompact(req, resp);
+        } else if("/compact/schedule".equals(req.getPathInfo())) {
+            sendResponse(resp, "application/json", H2JobScheduler.get(req.getServletContext(), "compact").toJson());
+        } else if("/capture".equals(req.getPathInfo())) {
+            performCapture(req, resp);
+        } else if("/capture/status".equals(req.getPathInfo())) {
+            H2ChangeCapture capture = H2ChangeCapture.get(req.getServletContext());
+            sendResponse(resp, "application/json", capture == null ? "{\"enabled\":false}" : capture.toJson());
+        } else if("/lifecycle".equals(req.getPathInfo())) {
+            sendResponse(resp, "application/json", H2TenantLifecycle.get(req.getServletContext()).toJson());
+        } else if("/memory".equals(req.getPathInfo())) {
+            sendResponse(resp, "application/json", H2MemoryGovernor.get(req.getServletContext()).toJson());
+        } else if("/volumes".equals(req.getPathInfo())) {
+            sendResponse(resp, "application/json", registry.toJson());
+        } else if("/move".equals(req.getPathInfo())) {
+            performMove(req, resp);
+        } else if("/throttle".equals(req.getPathInfo())) {
+            performThrottle(req, resp);
+        } else if("/health".equals(req.getPathInfo())) {
+            H2HealthProber prober = H2HealthProber.get(req.getServletContext());
+            resp.setHeader("Cache-Control", "no-store");
+            sendResponse(resp, "application/json", prober.isHealthy() ? HttpServletResponse.SC_OK
+                    : HttpServletResponse.SC_SERVICE_UNAVAILABLE, prober.toJson());
+        } else if("/ready".equals(req.getPathInfo())) {
+            H2StartupScan scan = H2StartupScan.get(req.getServletContext());
+            H2BackupCatalog catalog = H2BackupCatalog.get(req.getServletContext());
+            boolean isCatalogRebuilt = catalog == null || catalog.isRebuilt();
+            boolean isReady = isCatalogRebuilt && (scan == null || scan.isReady());
+            String json = scan != null ? scan.toJson(isCatalogRebuilt) : new JsonBuilder().beginObject()
+                    .field("status", isReady ? "ready" : "starting").field("catalogRebuilt", isCatalogRebuilt)
+                    .endObject().toString();
+            resp.setHeader("Cache-Control", "no-store");
+            sendResponse(resp, "application/json", isReady ? HttpServletResponse.SC_OK
+                    : HttpServletResponse.SC_SERVICE_UNAVAILABLE, json);
         }  else if("/status".equals(req.getPathInfo())) {
             String[] info3 = H2ContextListener.statusDatabaseService(req.getServletContext());
             sendResponse(resp, info3[0] + "\n" + info3[1]);
@@ -43,9 +93,11 @@ public class H2ServiceServlet extends HttpServlet {
             } else {
                 String msg;
                 if (isSingleDatabase) {
-                    msg = H2ContextListener.createDatabase(name.trim(), "sa", "Teamwork");
+                    msg = H2ContextListener.createDatabase(registry, name.trim(), H2ContextListener.DATABASE_USER,
+                            H2ContextListener.DATABASE_PASSWORD);
                 } else {
-                    msg = H2ContextListener.createDatabaseByModule(name.trim(), "sa", "Teamwork");
+                    msg = H2ContextListener.createDatabaseByModule(registry, name.trim(),
+                            H2ContextListener.DATABASE_USER, H2ContextListener.DATABASE_PASSWORD);
                 }
                 sendResponse(resp, msg);
             }
@@ -54,16 +106,102 @@ public class H2ServiceServlet extends HttpServlet {
         }
     }
 
-    private void sendResponse(HttpServletResponse response, String content) throws IOException {
-        response.setCharacterEncoding(ENCODING);
-        response.setContentType("text/html");
-        response.setStatus(HttpServletResponse.SC_OK);
-        try (PrintWriter printWriter = response.getWriter()) {
-            if (content != null) {
-                response.setContentLength(content.length());
-                printWriter.write(content);
-            }
-            printWriter.flush();
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        int workers = H2ContextListener.getInitParameter(getServletContext(), "provision.workers", 4);
+        provisionExecutor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "H2ProvisionWorker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        String template = getServletContext().getInitParameter("provision.template");
+        Path templatePath = template == null || template.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "dcapture-h2-template") : Paths.get(template);
+        registry = H2TenantRegistry.get(getServletContext());
+        provisioner = new H2TenantProvisioner(registry, templatePath, provisionExecutor,
+                H2ChangeCapture.get(getServletContext()) != null);
+        logger.info("H2 provision workers : " + workers + ", template : " + templatePath);
+        compactor = new H2Compactor(registry, H2ConnectionPools.get(getServletContext()));
+        compactBudget = H2ContextListener.getInitParameter(getServletContext(), "compact.budget", 600);
+        H2JobScheduler.get(getServletContext(), "compact").setTask(tenant -> job -> compactor.compact(job, tenant,
+                compactBudget * 1000L));
+    }
+
+    @Override
+    public void destroy() {
+        if (provisionExecutor != null) {
+            provisionExecutor.shutdownNow();
+        }
+        super.destroy();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if ("/provision".equals(req.getPathInfo())) {
+            String body = req.getReader().lines().collect(Collectors.joining("\n"));
+            performProvision(resp, H2TenantProvisioner.parseNames(body));
+        } else {
+            sendResponse(resp, req.getPathInfo() + " : service not allowed.");
+        }
+    }
+
+    private void performCompact(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String tenant = req.getParameter("tenant");
+        if (tenant == null || tenant.isBlank()) {
+            sendError(resp, "Tenant name (or * for all tenants) should not be empty.");
+            return;
+        }
+        long budgetMillis = Math.max(1, getIntParameter(req, "budget", compactBudget)) * 1000L;
+        H2JobScheduler scheduler = H2JobScheduler.get(getServletContext(), "compact");
+        submitJob(resp, scheduler, tenant.trim(), job -> compactor.compact(job, tenant.trim(), budgetMillis));
+    }
+
+    private void performMove(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String tenant = req.getParameter("tenant");
+        Path volume = registry.getVolume(req.getParameter("volume"));
+        if (tenant == null || tenant.isBlank()) {
+            sendError(resp, "Tenant name should not be empty.");
+        } else if (volume == null) {
+            sendError(resp, "Volume (index or path from /database/volumes) not found : " + req.getParameter("volume"));
+        } else {
+            H2ConnectionPools pools = H2ConnectionPools.get(getServletContext());
+            H2IoThrottle throttle = H2IoThrottle.get(getServletContext());
+            submitJob(resp, "move", tenant.trim(), job -> registry.move(job, tenant.trim(), volume, pools, throttle));
+        }
+    }
+
+    private void performCapture(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        H2ChangeCapture capture = H2ChangeCapture.get(req.getServletContext());
+        String tenant = req.getParameter("tenant");
+        if (capture == null) {
+            sendError(resp, "Change capture is not enabled (capture.enabled).");
+        } else if (tenant == null || tenant.isBlank()) {
+            sendError(resp, "Tenant name (or * for all tenants) should not be empty.");
+        } else {
+            submitJob(resp, "capture", tenant.trim(), job -> capture.install(job, tenant.trim()));
+        }
+    }
+
+    private void performThrottle(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        H2IoThrottle throttle = H2IoThrottle.get(req.getServletContext());
+        boolean isChanged = req.getParameter("business") != null || req.getParameter("offhours") != null
+                || req.getParameter("start") != null || req.getParameter("end") != null;
+        if (isChanged) {
+            throttle.setLimits(getIntParameter(req, "business", (int) (throttle.getBusinessRate() / 1024)) * 1024L,
+                    getIntParameter(req, "offhours", (int) (throttle.getOffHoursRate() / 1024)) * 1024L,
+                    getIntParameter(req, "start", throttle.getBusinessStart()),
+                    getIntParameter(req, "end", throttle.getBusinessEnd()));
+            logger.info("H2 I/O throttle changed : " + throttle.toJson());
+        }
+        sendResponse(resp, "application/json", throttle.toJson());
+    }
+
+    private void performProvision(HttpServletResponse resp, List<String> nameList) throws IOException {
+        if (nameList.isEmpty()) {
+            sendError(resp, "Tenant names should not be empty.");
+            return;
         }
+        submitJob(resp, "provision", nameList.size() + " tenants", job -> provisioner.provision(job, nameList));
     }
 }
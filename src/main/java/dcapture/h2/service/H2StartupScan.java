@@ -0,0 +1,161 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class H2StartupScan {
+    private static final Logger logger = LoggerFactory.getLogger(H2StartupScan.class);
+    private static final int SLOWEST = 10;
+    private final H2TenantRegistry registry;
+    private final H2ConnectionPools pools;
+    private final Set<String> hotSet;
+    private final int threads, warmRows, maxOpen;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicLong warmedRows = new AtomicLong();
+    private final Map<String, Long> openMillisMap = new ConcurrentHashMap<>();
+    private final Queue<String> failedQueue = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor;
+    private volatile int total = -1, skipped;
+    private volatile long started, finished;
+
+    public H2StartupScan(H2TenantRegistry registry, H2ConnectionPools pools, Set<String> hotSet, int maxOpen,
+                         int threads, int warmRows) {
+        this.registry = registry;
+        this.pools = pools;
+        this.hotSet = hotSet;
+        this.maxOpen = Math.max(0, maxOpen);
+        this.threads = Math.max(1, threads);
+        this.warmRows = Math.max(0, warmRows);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "H2StartupScan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2StartupScan get(ServletContext context) {
+        return (H2StartupScan) context.getAttribute(H2StartupScan.class.getName());
+    }
+
+    public static void recoverSwaps(List<Path> volumeList) {
+        for (Path volume : volumeList) {
+            try {
+                H2SwapJournal.recover(volume);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    public void start() {
+        started = System.currentTimeMillis();
+        Thread thread = new Thread(this::scan, "H2StartupScan");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return finished != 0;
+    }
+
+    private void scan() {
+        try {
+            List<String> tenantList = new ArrayList<>(registry.getTenants());
+            tenantList.sort(Comparator.comparing(tenant -> !hotSet.contains(tenant)));
+            List<String[]> databaseList = new ArrayList<>();
+            for (String tenant : tenantList) {
+                for (String module : registry.getModules()) {
+                    if (Files.exists(registry.getTenantPath(tenant).resolve(module + ".mv.db"))) {
+                        databaseList.add(new String[]{tenant, module});
+                    }
+                }
+            }
+            if (maxOpen != 0 && maxOpen < databaseList.size()) {
+                skipped = databaseList.size() - maxOpen;
+                databaseList = databaseList.subList(0, maxOpen);
+            }
+            total = databaseList.size();
+            logger.info("H2 startup scan : opening " + total + " databases with " + threads + " threads"
+                    + (skipped == 0 ? "" : ", " + skipped + " skipped over tenant.max.open"));
+            for (String[] database : databaseList) {
+                executor.execute(() -> open(database[0], database[1]));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (IOException ex) {
+            logger.info("H2 startup scan error : " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished = System.currentTimeMillis();
+            logger.info("H2 startup scan : " + done.get() + " databases opened, " + failedQueue.size()
+                    + " failed in " + (finished - started) + " ms, slowest " + getSlowest(3));
+        }
+    }
+
+    private void open(String tenant, String module) {
+        String name = tenant + "/" + module;
+        long startTime = System.currentTimeMillis(), rows = 0;
+        try (Connection connection = pools.getConnection(tenant, module)) {
+            long openTime = System.currentTimeMillis() - startTime;
+            rows = H2TenantLifecycle.warm(connection, warmRows);
+            openMillisMap.put(name, openTime);
+            warmedRows.addAndGet(rows);
+            done.incrementAndGet();
+            logger.info("H2 startup open : " + name + " " + openTime + " ms" + (warmRows == 0 ? ""
+                    : ", warmed " + rows + " rows in " + (System.currentTimeMillis() - startTime - openTime) + " ms"));
+        } catch (SQLException ex) {
+            failedQueue.add(name);
+            logger.info("H2 startup open error : " + name + " " + ex.getMessage());
+        }
+    }
+
+    private List<Map.Entry<String, Long>> getSlowest(int limit) {
+        List<Map.Entry<String, Long>> entryList = new ArrayList<>(openMillisMap.entrySet());
+        entryList.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entryList.subList(0, Math.min(limit, entryList.size()));
+    }
+
+    public String toJson(boolean isCatalogRebuilt) {
+        JsonBuilder builder = new JsonBuilder().beginObject()
+                .field("status", isReady() && isCatalogRebuilt ? "ready" : "starting")
+                .field("catalogRebuilt", isCatalogRebuilt).field("total", total).field("skipped", skipped).field("opened", done.get()).field("failed", failedQueue.size())
+                .field("warmedRows", warmedRows.get()).field("started", started).field("finished", finished)
+                .field("elapsedMillis", (isReady() ? finished : System.currentTimeMillis()) - started);
+        builder.name("slowest").beginArray();
+        for (Map.Entry<String, Long> entry : getSlowest(SLOWEST)) {
+            builder.beginObject().field("database", entry.getKey()).field("openMillis", entry.getValue())
+                    .endObject();
+        }
+        builder.endArray().name("errors").beginArray();
+        for (String name : failedQueue) {
+            builder.value(name);
+        }
+        return builder.endArray().endObject().toString();
+    }
+}
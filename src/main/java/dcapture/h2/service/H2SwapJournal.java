@@ -0,0 +1,141 @@
+package dcapture.h2.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class H2SwapJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(H2SwapJournal.class);
+    public static final String SUFFIX = ".swap";
+    private final Path file, targetPath, sourcePath, previousPath, rollbackPath;
+
+    private H2SwapJournal(Path file, Path targetPath, Path sourcePath, Path previousPath, Path rollbackPath) {
+        this.file = file;
+        this.targetPath = targetPath;
+        this.sourcePath = sourcePath;
+        this.previousPath = previousPath;
+        this.rollbackPath = rollbackPath;
+    }
+
+    public static Path getJournalPath(Path targetPath) {
+        return targetPath.resolveSibling(targetPath.getFileName() + SUFFIX);
+    }
+
+    public static H2SwapJournal begin(Path targetPath, Path sourcePath, Path rollbackPath) throws IOException {
+        Path file = getJournalPath(targetPath);
+        if (Files.exists(file)) {
+            throw new IOException("Unfinished swap found, restart the service to recover it : " + file);
+        }
+        Path previousPath = rollbackPath.resolveSibling(rollbackPath.getFileName() + "-" + System.currentTimeMillis());
+        H2SwapJournal journal = new H2SwapJournal(file, targetPath, sourcePath, previousPath, rollbackPath);
+        Path tempPath = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempPath, List.of("source " + sourcePath.getFileName(), "previous " + previousPath.getFileName(),
+                "rollback " + rollbackPath.getFileName()), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(tempPath, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return journal;
+    }
+
+    public void swap() throws IOException {
+        Files.move(targetPath, previousPath, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.move(previousPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (Files.exists(previousPath)) {
+            if (!Files.exists(targetPath)) {
+                return;
+            }
+            deleteDirectory(rollbackPath);
+            Files.move(previousPath, rollbackPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(file);
+    }
+
+    public static List<String> recover(Path volume) throws IOException {
+        List<String> messageList = new ArrayList<>();
+        if (!Files.isDirectory(volume)) {
+            return messageList;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(volume, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    messageList.add(recoverFile(file));
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    messageList.add("Unfinished swap not recovered : " + file + ", " + ex.getMessage());
+                }
+            }
+        }
+        return messageList;
+    }
+
+    private static String recoverFile(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        Path targetPath = file.resolveSibling(name.substring(0, name.length() - SUFFIX.length()));
+        Path sourcePath = null, previousPath = null, rollbackPath = null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ", 2);
+            if (parts.length != 2 || parts[1].isBlank() || parts[1].contains("/") || parts[1].contains("\\")) {
+                continue;
+            }
+            Path path = file.resolveSibling(parts[1]);
+            if ("source".equals(parts[0])) {
+                sourcePath = path;
+            } else if ("previous".equals(parts[0])) {
+                previousPath = path;
+            } else if ("rollback".equals(parts[0])) {
+                rollbackPath = path;
+            }
+        }
+        if (sourcePath == null || previousPath == null || rollbackPath == null) {
+            throw new IOException("Swap journal not valid : " + file);
+        }
+        String state;
+        if (!Files.exists(targetPath) && Files.exists(sourcePath)) {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            state = "completed";
+        } else if (!Files.exists(targetPath) && Files.exists(previousPath)) {
+            Files.move(previousPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            state = "rolled back";
+        } else if (Files.exists(sourcePath)) {
+            deleteDirectory(sourcePath);
+            state = "not started, staged files removed";
+        } else {
+            state = "completed";
+        }
+        new H2SwapJournal(file, targetPath, sourcePath, previousPath, rollbackPath).close();
+        String msg = "Unfinished swap of " + targetPath + " recovered : " + state;
+        logger.info(msg);
+        return msg;
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Collections.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
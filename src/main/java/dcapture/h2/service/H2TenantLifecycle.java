@@ -0,0 +1,262 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.h2.engine.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class H2TenantLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(H2TenantLifecycle.class);
+    private final H2TenantRegistry registry;
+    private final H2ConnectionPools pools;
+    private final Set<String> hotSet;
+    private final long idleMillis, intervalMillis;
+    private final int maxOpen, warmRows;
+    private final AtomicLong evictedCount = new AtomicLong(), warmedCount = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+    private volatile List<OpenDatabase> openList = new ArrayList<>();
+    private volatile long lastSweep;
+
+    public H2TenantLifecycle(H2TenantRegistry registry, H2ConnectionPools pools, Set<String> hotSet,
+                             int idleSeconds, int maxOpen, int intervalSeconds, int warmRows) {
+        this.registry = registry;
+        this.pools = pools;
+        this.hotSet = hotSet;
+        this.idleMillis = Math.max(0, idleSeconds) * 1000L;
+        this.maxOpen = Math.max(0, maxOpen);
+        this.intervalMillis = Math.max(5, intervalSeconds) * 1000L;
+        this.warmRows = Math.max(0, warmRows);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2TenantLifecycle");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static H2TenantLifecycle get(ServletContext context) {
+        return (H2TenantLifecycle) context.getAttribute(H2TenantLifecycle.class.getName());
+    }
+
+    public static Set<String> parseTenants(String text) {
+        Set<String> tenantSet = new LinkedHashSet<>();
+        if (text != null) {
+            for (String name : text.split("[,;\\s]+")) {
+                if (!name.isBlank()) {
+                    tenantSet.add(name.trim());
+                }
+            }
+        }
+        return tenantSet;
+    }
+
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("H2 tenant lifecycle started, idle " + (idleMillis / 1000) + " s, max open "
+                + (maxOpen == 0 ? "unlimited" : String.valueOf(maxOpen)) + ", hot tenants " + hotSet);
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweep() {
+        try {
+            warmHotTenants();
+            List<OpenDatabase> databaseList = getOpenDatabases();
+            evict(databaseList);
+            lastSweep = System.currentTimeMillis();
+        } catch (Exception ex) {
+            logger.info("H2 tenant lifecycle error : " + ex.getMessage());
+        }
+    }
+
+    private void warmHotTenants() {
+        for (String tenant : hotSet) {
+            if (registry.isBusy(tenant)) {
+                continue;
+            }
+            long startTime = System.currentTimeMillis(), rows = 0;
+            int count = 0;
+            for (String module : registry.getModules()) {
+                if (!Files.exists(registry.getTenantPath(tenant).resolve(module + ".mv.db"))) {
+                    continue;
+                }
+                try {
+                    if (pools.pin(tenant, module)) {
+                        rows += warm(tenant, module);
+                        count += 1;
+                    }
+                } catch (SQLException ex) {
+                    logger.info("H2 hot tenant warm error : " + tenant + "/" + module + " " + ex.getMessage());
+                }
+            }
+            if (count != 0) {
+                warmedCount.addAndGet(count);
+                logger.info("H2 hot tenant warmed : " + tenant + ", " + count + " databases, " + rows + " rows in "
+                        + (System.currentTimeMillis() - startTime) + " ms");
+            }
+        }
+    }
+
+    private long warm(String tenant, String module) throws SQLException {
+        try (Connection connection = pools.getConnection(tenant, module)) {
+            return warm(connection, warmRows);
+        }
+    }
+
+    static long warm(Connection connection, int maxRows) throws SQLException {
+        long rows = 0;
+        if (maxRows <= 0) {
+            return rows;
+        }
+        try (Statement statement = connection.createStatement()) {
+            List<String> tableList = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery("SELECT TABLE_SCHEMA, TABLE_NAME "
+                    + "FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_TYPE = 'BASE TABLE' "
+                    + "AND TABLE_SCHEMA <> 'INFORMATION_SCHEMA'")) {
+                while (resultSet.next()) {
+                    tableList.add("\"" + resultSet.getString(1) + "\".\"" + resultSet.getString(2) + "\"");
+                }
+            }
+            statement.setMaxRows(maxRows);
+            for (String table : tableList) {
+                try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table)) {
+                    while (resultSet.next()) {
+                        rows += 1;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private List<OpenDatabase> getOpenDatabases() {
+        Map<Path, String> keyMap = new HashMap<>();
+        for (String key : pools.getKeys()) {
+            String[] parts = key.split("/", 2);
+            Path path = registry.getTenantPath(parts[0]);
+            keyMap.put((parts.length == 1 ? path : path.resolve(parts[1])).toAbsolutePath().normalize(), key);
+        }
+        long now = System.currentTimeMillis();
+        List<OpenDatabase> databaseList = new ArrayList<>();
+        for (Map.Entry<Path, Database> entry : H2OpenDatabases.getDatabases().entrySet()) {
+            Path parent = entry.getKey().getParent();
+            if (parent == null || !registry.getVolumes().contains(parent.getParent())) {
+                continue;
+            }
+            OpenDatabase database = new OpenDatabase(entry.getKey());
+            database.poolKey = keyMap.get(entry.getKey());
+            H2OpenDatabases.Sessions sessions = H2OpenDatabases.getSessions(entry.getValue());
+            database.sessions = sessions.count;
+            database.isTcp = sessions.isTcp;
+            database.isBusy = sessions.isBusy;
+            database.lastActive = sessions.isBusy || sessions.lastActive == 0 ? now : sessions.lastActive;
+            databaseList.add(database);
+        }
+        databaseList.sort(Comparator.comparingLong(database -> database.lastActive));
+        openList = databaseList;
+        return databaseList;
+    }
+
+    private void evict(List<OpenDatabase> databaseList) {
+        long now = System.currentTimeMillis();
+        int open = databaseList.size();
+        List<String> evictedList = new ArrayList<>();
+        List<OpenDatabase> closedList = new ArrayList<>();
+        for (OpenDatabase database : databaseList) {
+            boolean isIdle = idleMillis != 0 && now - database.lastActive >= idleMillis;
+            boolean isOverCap = maxOpen != 0 && open > maxOpen;
+            if (database.poolKey == null || database.isBusy || isHot(database) || !(isIdle || isOverCap)
+                    || registry.isBusy(database.path.getParent().getFileName().toString())) {
+                continue;
+            }
+            if (pools.evictKey(database.poolKey)) {
+                boolean isClosed = H2OpenDatabases.getDatabase(database.path) == null;
+                if (isClosed) {
+                    open -= 1;
+                    closedList.add(database);
+                }
+                evictedList.add(database.path.getParent().getFileName() + "/" + database.path.getFileName()
+                        + " (" + ((now - database.lastActive) / 1000) + " s idle" + (isClosed ? ")"
+                        : ", still open by tcp sessions or borrowed connections)"));
+            }
+        }
+        if (!closedList.isEmpty()) {
+            List<OpenDatabase> remainList = new ArrayList<>(databaseList);
+            remainList.removeAll(closedList);
+            openList = remainList;
+        }
+        if (!evictedList.isEmpty()) {
+            evictedCount.addAndGet(evictedList.size());
+            logger.info("H2 idle databases closed : " + evictedList);
+        }
+    }
+
+    private boolean isHot(OpenDatabase database) {
+        Path parent = database.path.getParent();
+        return parent != null && hotSet.contains(parent.getFileName().toString());
+    }
+
+    public List<Path> refreshOpenPaths() {
+        getOpenDatabases();
+        return getOpenPaths();
+    }
+
+    public List<Path> getOpenPaths() {
+        List<Path> pathList = new ArrayList<>();
+        for (OpenDatabase database : openList) {
+            pathList.add(database.path);
+        }
+        return pathList;
+    }
+
+    public String toJson() {
+        long now = System.currentTimeMillis();
+        JsonBuilder builder = new JsonBuilder().beginObject().field("idleSeconds", idleMillis / 1000)
+                .field("maxOpen", maxOpen).field("intervalSeconds", intervalMillis / 1000)
+                .field("warmRows", warmRows).field("evicted", evictedCount.get())
+                .field("warmed", warmedCount.get()).field("lastSweep", lastSweep);
+        builder.name("hot").beginArray();
+        for (String tenant : hotSet) {
+            builder.value(tenant);
+        }
+        builder.endArray().name("open").beginArray();
+        for (OpenDatabase database : openList) {
+            builder.beginObject().field("path", database.path.toString()).field("tcp", database.isTcp)
+                    .field("pooled", database.poolKey != null).field("sessions", database.sessions)
+                    .field("busy", database.isBusy).field("idleSeconds", (now - database.lastActive) / 1000)
+                    .endObject();
+        }
+        return builder.endArray().endObject().toString();
+    }
+
+    private static class OpenDatabase {
+        private final Path path;
+        private String poolKey;
+        private boolean isTcp, isBusy;
+        private int sessions;
+        private long lastActive;
+
+        OpenDatabase(Path path) {
+            this.path = path;
+        }
+    }
+}
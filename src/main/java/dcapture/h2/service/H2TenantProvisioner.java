@@ -0,0 +1,199 @@
+package dcapture.h2.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+public class H2TenantProvisioner {
+    private static final Logger logger = LoggerFactory.getLogger(H2TenantProvisioner.class);
+    private static final Pattern TENANT_NAME = Pattern.compile("[A-Za-z0-9_\\-]{1,64}");
+    private static final String PROVISION_SUFFIX = ".provision-";
+    private final H2TenantRegistry registry;
+    private final Path templatePath;
+    private final String[] modules;
+    private final ExecutorService executor;
+    private final boolean isCapture;
+
+    public H2TenantProvisioner(H2TenantRegistry registry, Path templatePath, ExecutorService executor,
+                               boolean isCapture) {
+        this.registry = registry;
+        this.templatePath = templatePath;
+        this.modules = registry.getModules();
+        this.executor = executor;
+        this.isCapture = isCapture;
+    }
+
+    public static List<String> parseNames(String text) {
+        LinkedHashSet<String> nameSet = new LinkedHashSet<>();
+        if (text != null) {
+            for (String name : text.split("[,;\\s\"\\[\\]]+")) {
+                if (!name.isBlank()) {
+                    nameSet.add(name.trim());
+                }
+            }
+        }
+        return new ArrayList<>(nameSet);
+    }
+
+    public synchronized List<Path> prepareTemplate() throws SQLException, IOException {
+        Files.createDirectories(templatePath);
+        List<Path> fileList = new ArrayList<>();
+        for (String module : modules) {
+            Path file = templatePath.resolve(module + ".mv.db");
+            boolean isCreated = !Files.exists(file);
+            if (isCreated || isCapture) {
+                long startTime = System.currentTimeMillis();
+                String url = "jdbc:h2:" + templatePath.resolve(module).toAbsolutePath();
+                try (Connection connection = DriverManager.getConnection(url, H2ContextListener.DATABASE_USER,
+                        H2ContextListener.DATABASE_PASSWORD);
+                     Statement statement = connection.createStatement()) {
+                    if (isCapture) {
+                        H2ChangeCapture.install(connection);
+                    }
+                    statement.execute("CHECKPOINT SYNC");
+                }
+                if (isCreated) {
+                    logger.info("H2 provision template created : " + file + " in "
+                            + (System.currentTimeMillis() - startTime) + " ms");
+                }
+            }
+            fileList.add(file);
+        }
+        return fileList;
+    }
+
+    public String provision(H2Job job, List<String> nameList) throws Exception {
+        List<Path> templateList = prepareTemplate();
+        long templateSize = 0;
+        for (Path file : templateList) {
+            templateSize += Files.size(file);
+        }
+        job.setBytesTotal(templateSize * nameList.size());
+        long startTime = System.currentTimeMillis();
+        List<Future<String>> futureList = new ArrayList<>();
+        for (String tenant : nameList) {
+            long tenantSize = templateSize;
+            futureList.add(executor.submit(() -> {
+                if (job.isCancelled()) {
+                    return tenant + " : cancelled";
+                }
+                job.beginModule(tenant);
+                try {
+                    return provisionTenant(tenant, templateList);
+                } finally {
+                    job.endModule(tenant);
+                    job.addBytesDone(tenantSize);
+                }
+            }));
+        }
+        StringBuilder builder = new StringBuilder();
+        int created = 0, failed = 0;
+        try {
+            for (int index = 0; index < futureList.size(); index++) {
+                try {
+                    String result = futureList.get(index).get();
+                    created += result.contains(" : created") ? 1 : 0;
+                    builder.append(result).append("\n");
+                } catch (ExecutionException ex) {
+                    failed += 1;
+                    builder.append(nameList.get(index)).append(" : ERROR ").append(ex.getCause().getMessage())
+                            .append("\n");
+                }
+            }
+        } catch (InterruptedException ex) {
+            futureList.forEach(future -> future.cancel(true));
+            throw ex;
+        }
+        String title = "Tenants provisioned : " + created + " created, " + failed + " failed, "
+                + (nameList.size() - created - failed) + " skipped of " + nameList.size() + " in "
+                + (System.currentTimeMillis() - startTime) + " ms";
+        logger.info(title);
+        builder.insert(0, title + "\n");
+        if (failed != 0) {
+            throw new SQLException(builder.toString());
+        }
+        return builder.toString();
+    }
+
+    private String provisionTenant(String tenant, List<Path> templateList) throws IOException {
+        if (!TENANT_NAME.matcher(tenant).matches()) {
+            throw new IOException("Tenant name is not valid : " + tenant);
+        }
+        long startTime = System.currentTimeMillis();
+        Path tenantPath = registry.placeTenant(tenant);
+        try (H2TenantRegistry.Lease lease = registry.lease(tenant, "provision")) {
+            for (String module : modules) {
+                if (Files.exists(tenantPath.resolve(module + ".mv.db"))) {
+                    return tenant + " : exists, skipped";
+                }
+            }
+            Path tempPath = tenantPath.resolveSibling(tenant + PROVISION_SUFFIX + System.nanoTime());
+            List<Path> movedList = new ArrayList<>();
+            try {
+                Files.createDirectories(tempPath);
+                for (Path file : templateList) {
+                    Files.copy(file, tempPath.resolve(file.getFileName()));
+                }
+                if (Files.exists(tenantPath)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(tenantPath)) {
+                        for (Path path : stream) {
+                            if (path.getFileName().toString().endsWith(".mv.db")) {
+                                lease.lock(path);
+                            }
+                            Files.move(path, tempPath.resolve(path.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                            movedList.add(path);
+                        }
+                    }
+                    Files.delete(tenantPath);
+                }
+                Files.move(tempPath, tenantPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                restoreMoved(tempPath, tenantPath, movedList);
+                deleteTemp(tempPath);
+                throw ex;
+            }
+        }
+        return tenant + " : created in " + (System.currentTimeMillis() - startTime) + " ms";
+    }
+
+    private void restoreMoved(Path tempPath, Path tenantPath, List<Path> movedList) {
+        try {
+            Files.createDirectories(tenantPath);
+            for (Path path : movedList) {
+                Files.move(tempPath.resolve(path.getFileName()), path, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void deleteTemp(Path tempPath) {
+        if (!Files.exists(tempPath)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempPath)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(tempPath);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package dcapture.h2.service;
+
+import jakarta.servlet.ServletContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class H2TenantRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(H2TenantRegistry.class);
+    private static final String[] MODULES = {"shared", "cashbook", "materials", "project", "inventory", "purchase",
+            "sales"};
+    private static final String MOVE_SUFFIX = ".move-", MOVED_SUFFIX = ".moved-";
+    private final List<Path> volumeList;
+    private final long minFreeBytes;
+    private final Map<String, Path> tenantMap = new ConcurrentHashMap<>();
+    private final Map<String, Path> openMap = new ConcurrentHashMap<>();
+    private final Map<Path, AtomicInteger> openCountMap = new ConcurrentHashMap<>();
+    private final Map<String, String> leaseMap = new ConcurrentHashMap<>();
+
+    public H2TenantRegistry(List<Path> volumeList, long minFreeBytes) {
+        List<Path> pathList = new ArrayList<>();
+        for (Path volume : volumeList) {
+            Path path = volume.toAbsolutePath().normalize();
+            if (!pathList.contains(path)) {
+                pathList.add(path);
+                openCountMap.put(path, new AtomicInteger());
+            }
+        }
+        this.volumeList = Collections.unmodifiableList(pathList);
+        this.minFreeBytes = minFreeBytes;
+    }
+
+    public static H2TenantRegistry get(ServletContext context) {
+        return (H2TenantRegistry) context.getAttribute(H2TenantRegistry.class.getName());
+    }
+
+    public static List<Path> parseVolumes(String dataRoot, String volumes) {
+        List<Path> pathList = new ArrayList<>();
+        if (dataRoot != null && !dataRoot.isBlank()) {
+            pathList.add(Paths.get(dataRoot.trim()));
+        }
+        if (volumes != null) {
+            for (String volume : volumes.split("[,;]")) {
+                if (!volume.isBlank()) {
+                    pathList.add(Paths.get(volume.trim()));
+                }
+            }
+        }
+        return pathList;
+    }
+
+    public String[] getModules() {
+        return MODULES.clone();
+    }
+
+    public List<Path> getVolumes() {
+        return volumeList;
+    }
+
+    public Path getVolume(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(text.trim());
+            return index >= 0 && index < volumeList.size() ? volumeList.get(index) : null;
+        } catch (NumberFormatException ex) {
+            Path path = Paths.get(text.trim()).toAbsolutePath().normalize();
+            return volumeList.contains(path) ? path : null;
+        }
+    }
+
+    public void scan() throws IOException {
+        long startTime = System.currentTimeMillis();
+        for (Path volume : volumeList) {
+            Files.createDirectories(volume);
+            for (String tenant : listTenants(volume)) {
+                Path previous = tenantMap.putIfAbsent(tenant, volume);
+                if (previous != null && !previous.equals(volume)) {
+                    logger.info("H2 tenant " + tenant + " found on " + previous + " and " + volume + ", using "
+                            + previous);
+                }
+            }
+        }
+        logger.info("H2 tenant registry : " + tenantMap.size() + " tenants on " + volumeList.size() + " volumes in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private static List<String> listTenants(Path volume) throws IOException {
+        List<String> tenantList = new ArrayList<>();
+        if (!Files.isDirectory(volume)) {
+            return tenantList;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(volume, Files::isDirectory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!name.contains(".")) {
+                    tenantList.add(name);
+                }
+            }
+        }
+        return tenantList;
+    }
+
+    public List<String> getTenants() throws IOException {
+        Set<String> tenantSet = new TreeSet<>();
+        for (Path volume : volumeList) {
+            for (String tenant : listTenants(volume)) {
+                tenantMap.putIfAbsent(tenant, volume);
+                tenantSet.add(tenant);
+            }
+        }
+        return new ArrayList<>(tenantSet);
+    }
+
+    public Path getTenantPath(String tenant) {
+        Path volume = getVolumeOf(tenant);
+        return (volume == null ? volumeList.get(0) : volume).resolve(tenant);
+    }
+
+    public Path placeTenant(String tenant) {
+        Path volume = getVolumeOf(tenant);
+        if (volume == null) {
+            Path previous = tenantMap.putIfAbsent(tenant, place(tenant));
+            volume = previous == null ? tenantMap.get(tenant) : previous;
+        }
+        return volume.resolve(tenant);
+    }
+
+    private Path getVolumeOf(String tenant) {
+        Path volume = tenantMap.get(tenant);
+        if (volume == null) {
+            volume = findVolume(tenant);
+            if (volume != null) {
+                Path previous = tenantMap.putIfAbsent(tenant, volume);
+                volume = previous == null ? volume : previous;
+            }
+        }
+        return volume;
+    }
+
+    private Path findVolume(String tenant) {
+        for (Path volume : volumeList) {
+            if (Files.isDirectory(volume.resolve(tenant)) || Files.exists(volume.resolve(tenant + ".mv.db"))) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    private Path place(String tenant) {
+        Path selected = volumeList.get(0);
+        double selectedScore = -1;
+        for (Path volume : volumeList) {
+            long usable = getUsableSpace(volume);
+            if (usable < minFreeBytes) {
+                continue;
+            }
+            double score = usable / (1.0 + openCountMap.get(volume).get());
+            if (score > selectedScore) {
+                selected = volume;
+                selectedScore = score;
+            }
+        }
+        if (selectedScore < 0) {
+            logger.info("H2 tenant " + tenant + " : no volume above " + minFreeBytes + " free bytes, using "
+                    + selected);
+        } else if (volumeList.size() != 1) {
+            logger.info("H2 tenant " + tenant + " placed on " + selected);
+        }
+        return selected;
+    }
+
+    private static long getUsableSpace(Path volume) {
+        try {
+            Files.createDirectories(volume);
+            return Files.getFileStore(volume).getUsableSpace();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    public String getUrl(String tenant, String module) {
+        Path path = getTenantPath(tenant);
+        return "jdbc:h2:" + (module == null ? path : path.resolve(module));
+    }
+
+    public String getTcpUrl(String tenant, String module) {
+        Path path = getTenantPath(tenant);
+        return "jdbc:h2:tcp://localhost/" + (module == null ? path : path.resolve(module));
+    }
+
+    public boolean isBusy(String tenant) {
+        return leaseMap.containsKey(tenant);
+    }
+
+    public String getBusyReason(String tenant) {
+        return leaseMap.get(tenant);
+    }
+
+    public Lease lease(String tenant, String reason) throws IOException {
+        String previous = leaseMap.putIfAbsent(tenant, reason);
+        if (previous != null) {
+            throw new IOException("Tenant is busy (" + previous + ") : " + tenant);
+        }
+        return new Lease(tenant);
+    }
+
+    String acquire(String key) {
+        String[] parts = key.split("/", 2);
+        Path path = getTenantPath(parts[0]);
+        Path previous = openMap.put(key, path.getParent());
+        if (previous != null) {
+            openCountMap.get(previous).decrementAndGet();
+        }
+        openCountMap.get(path.getParent()).incrementAndGet();
+        return "jdbc:h2:" + (parts.length == 1 ? path : path.resolve(parts[1]));
+    }
+
+    void release(String key) {
+        Path volume = openMap.remove(key);
+        if (volume != null) {
+            openCountMap.get(volume).decrementAndGet();
+        }
+    }
+
+    public String move(H2Job job, String tenant, Path target, H2ConnectionPools pools, H2IoThrottle throttle)
+            throws IOException, SQLException {
+        Path source = getTenantPath(tenant);
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Tenant databases not found to move : " + tenant);
+        }
+        if (source.getParent().equals(target)) {
+            return tenant + " : already on " + target;
+        }
+        long startTime = System.currentTimeMillis();
+        Path tempPath = target.resolve(tenant + MOVE_SUFFIX + System.nanoTime());
+        try (Lease lease = lease(tenant, "move")) {
+            pools.evict(tenant);
+            lease.lockModules(source);
+            List<Path> fileList;
+            try (Stream<Path> stream = Files.walk(source)) {
+                fileList = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            Map<Path, Long> sizeMap = new LinkedHashMap<>();
+            long size = 0;
+            for (Path file : fileList) {
+                sizeMap.put(file, Files.size(file));
+                size += sizeMap.get(file);
+            }
+            if (getUsableSpace(target) < size + minFreeBytes) {
+                throw new IOException("Volume " + target + " has not enough free space for " + tenant + " ("
+                        + size + " bytes)");
+            }
+            job.setBytesTotal(size);
+            for (Path file : fileList) {
+                if (job.isCancelled()) {
+                    throw new IOException("Tenant move cancelled : " + tenant);
+                }
+                Path targetFile = tempPath.resolve(source.relativize(file).toString());
+                Files.createDirectories(targetFile.getParent());
+                job.beginModule(file.getFileName().toString());
+                FileChannel channel = lease.getChannel(file);
+                try (InputStream inputStream = throttle.wrap(channel == null ? Files.newInputStream(file)
+                        : Channels.newInputStream(channel.position(0)));
+                     OutputStream outputStream = Files.newOutputStream(targetFile)) {
+                    inputStream.transferTo(outputStream);
+                }
+                if (Files.size(targetFile) != sizeMap.get(file)) {
+                    throw new IOException("Tenant move size mismatch : " + file);
+                }
+                job.endModule(file.getFileName().toString());
+                job.addBytesDone(sizeMap.get(file));
+            }
+            for (Map.Entry<Path, Long> entry : sizeMap.entrySet()) {
+                if (Files.size(entry.getKey()) != entry.getValue()) {
+                    throw new IOException("Tenant changed during move : " + entry.getKey());
+                }
+            }
+            Files.move(tempPath, target.resolve(tenant), StandardCopyOption.ATOMIC_MOVE);
+            tenantMap.put(tenant, target);
+            Path movedPath = source.resolveSibling(tenant + MOVED_SUFFIX + System.nanoTime());
+            Files.move(source, movedPath, StandardCopyOption.ATOMIC_MOVE);
+            lease.unlock();
+            deleteDirectory(movedPath);
+            String msg = tenant + " : moved from " + source.getParent() + " to " + target + ", " + size
+                    + " bytes in " + (System.currentTimeMillis() - startTime) + " ms";
+            logger.info(msg);
+            return msg;
+        } finally {
+            if (Files.exists(tempPath)) {
+                deleteDirectory(tempPath);
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Collections.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    public String toJson() throws IOException {
+        Map<Path, Integer> tenantCountMap = new ConcurrentHashMap<>();
+        for (String tenant : getTenants()) {
+            tenantCountMap.merge(tenantMap.get(tenant), 1, Integer::sum);
+        }
+        JsonBuilder builder = new JsonBuilder().beginObject().field("minFreeBytes", minFreeBytes);
+        builder.name("volumes").beginArray();
+        for (int index = 0; index < volumeList.size(); index++) {
+            Path volume = volumeList.get(index);
+            long total = -1;
+            try {
+                total = Files.getFileStore(volume).getTotalSpace();
+            } catch (IOException ex) {
+                // volume not mounted
+            }
+            builder.beginObject().field("index", index).field("path", volume.toString())
+                    .field("usableBytes", getUsableSpace(volume)).field("totalBytes", total)
+                    .field("tenants", tenantCountMap.getOrDefault(volume, 0))
+                    .field("openDatabases", openCountMap.get(volume).get()).endObject();
+        }
+        builder.endArray().name("busy").beginArray();
+        for (Map.Entry<String, String> entry : new TreeMap<>(leaseMap).entrySet()) {
+            builder.beginObject().field("tenant", entry.getKey()).field("reason", entry.getValue()).endObject();
+        }
+        return builder.endArray().endObject().toString();
+    }
+
+    public class Lease implements AutoCloseable {
+        private final String tenant;
+        private final Map<Path, FileChannel> channelMap = new LinkedHashMap<>();
+
+        private Lease(String tenant) {
+            this.tenant = tenant;
+        }
+
+        public void lockModules(Path directory) throws IOException {
+            for (String module : MODULES) {
+                Path file = directory.resolve(module + ".mv.db");
+                if (Files.exists(file)) {
+                    lock(file);
+                }
+            }
+        }
+
+        public FileChannel lock(Path file) throws IOException {
+            FileChannel channel = channelMap.get(file);
+            if (channel != null) {
+                return channel;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException ex) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                channel.close();
+                throw new IOException("Database is in use : " + file);
+            }
+            channelMap.put(file, channel);
+            return channel;
+        }
+
+        public FileChannel getChannel(Path file) {
+            return channelMap.get(file);
+        }
+
+        public void unlock() {
+            for (FileChannel channel : channelMap.values()) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            channelMap.clear();
+        }
+
+        @Override
+        public void close() {
+            unlock();
+            leaseMap.remove(tenant);
+        }
+    }
+}
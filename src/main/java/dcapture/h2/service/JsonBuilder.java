@@ -0,0 +1,143 @@
+package dcapture.h2.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class JsonBuilder {
+    private final StringBuilder builder = new StringBuilder();
+    private final Deque<Boolean> firstStack = new ArrayDeque<>();
+    private boolean afterName;
+
+    public JsonBuilder beginObject() {
+        separator();
+        builder.append('{');
+        firstStack.push(true);
+        return this;
+    }
+
+    public JsonBuilder endObject() {
+        firstStack.pop();
+        builder.append('}');
+        return this;
+    }
+
+    public JsonBuilder beginArray() {
+        separator();
+        builder.append('[');
+        firstStack.push(true);
+        return this;
+    }
+
+    public JsonBuilder endArray() {
+        firstStack.pop();
+        builder.append(']');
+        return this;
+    }
+
+    public JsonBuilder name(String name) {
+        separator();
+        quote(name);
+        builder.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonBuilder value(String value) {
+        separator();
+        if (value == null) {
+            builder.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    public JsonBuilder value(long value) {
+        separator();
+        builder.append(value);
+        return this;
+    }
+
+    public JsonBuilder value(double value) {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            builder.append("null");
+        } else {
+            builder.append(value);
+        }
+        return this;
+    }
+
+    public JsonBuilder value(boolean value) {
+        separator();
+        builder.append(value);
+        return this;
+    }
+
+    public JsonBuilder field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public JsonBuilder field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    public JsonBuilder field(String name, double value) {
+        return name(name).value(value);
+    }
+
+    public JsonBuilder field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    private void separator() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!firstStack.isEmpty()) {
+            if (firstStack.peek()) {
+                firstStack.pop();
+                firstStack.push(false);
+            } else {
+                builder.append(',');
+            }
+        }
+    }
+
+    private void quote(String text) {
+        builder.append('"');
+        for (int index = 0; index < text.length(); index++) {
+            char ch = text.charAt(index);
+            switch (ch) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        builder.append(ch);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -1,21 +1,34 @@
 package dcapture.h2.service;
 
 import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpOutput;
+import org.h2.store.FileLister;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.nio.file.DirectoryStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class MasterHttpServlet extends HttpServlet {
-    protected static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    protected static final DateTimeFormatter dateFormat = DateTimeFormatter.ISO_LOCAL_DATE;
     protected static final String ENCODING = "UTF-8";
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+    private static final String JETTY_OUTPUT = "org.eclipse.jetty.server.HttpOutput";
 
     protected String[] getPathInfoArray(String pathInfo) {
         if (pathInfo == null || pathInfo.isEmpty()) {
@@ -30,14 +43,31 @@ public abstract class MasterHttpServlet extends HttpServlet {
         return pathInfo.split("/");
     }
 
+    protected int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
     protected void sendResponse(HttpServletResponse response, String bodyText) throws IOException {
         sendResponse(response, "text/html", bodyText);
     }
 
     protected void sendResponse(HttpServletResponse response, String type, String bodyText) throws IOException {
+        sendResponse(response, type, HttpServletResponse.SC_OK, bodyText);
+    }
+
+    protected void sendResponse(HttpServletResponse response, String type, int status, String bodyText)
+            throws IOException {
         response.setCharacterEncoding(ENCODING);
         response.setContentType(type);
-        response.setStatus(HttpServletResponse.SC_OK);
+        response.setStatus(status);
         try (PrintWriter printWriter = response.getWriter()) {
             if (bodyText != null) {
                 response.setContentLength(bodyText.length());
@@ -60,21 +90,187 @@ public abstract class MasterHttpServlet extends HttpServlet {
         }
     }
 
-    protected Map<String, String> getDatabaseUrlByModules(String appsName) {
-        String prefix = "jdbc:h2:tcp://localhost/~/data/";
-        Map<String, String> resultsMap = new HashMap<>();
-        for (String db : getDatabaseNames()) {
-            resultsMap.put(db, prefix + appsName + "/" + db);
+    protected void sendJson(HttpServletResponse response, String json) throws IOException {
+        sendResponse(response, "application/json", json);
+    }
+
+    protected void submitJob(HttpServletResponse response, String type, String appsName, H2Job.Task task)
+            throws IOException {
+        H2JobService jobService = H2JobService.get(getServletContext());
+        try {
+            sendJob(response, jobService.submit(type, appsName, task));
+        } catch (RejectedExecutionException ex) {
+            response.setHeader("Retry-After", "30");
+            sendError(response, ex.getMessage());
+        }
+    }
+
+    protected void submitJob(HttpServletResponse response, H2JobScheduler scheduler, String appsName,
+                             H2Job.Task task) throws IOException {
+        try {
+            sendJob(response, scheduler.submit(appsName, task));
+        } catch (RejectedExecutionException ex) {
+            response.setHeader("Retry-After", "30");
+            sendError(response, ex.getMessage());
+        }
+    }
+
+    private void sendJob(HttpServletResponse response, H2Job job) throws IOException {
+        JsonBuilder builder = new JsonBuilder();
+        job.toJson(builder);
+        sendJson(response, builder.toString());
+    }
+
+    protected long getDatabaseSize(String directory, String db) {
+        long size = 0;
+        for (String fileName : FileLister.getDatabaseFiles(directory, db, true)) {
+            size += new File(fileName).length();
+        }
+        return size;
+    }
+
+    protected long sendFile(HttpServletRequest request, HttpServletResponse response, Path file, String fileName)
+            throws IOException {
+        long length = Files.size(file), lastModified = Files.getLastModifiedTime(file).toMillis();
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(eTag) || "*".equals(ifNoneMatch.trim()))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return 0;
+        }
+        long start = 0, end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && isIfRangeMatched(request, eTag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return 0;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentType("application/octet-stream");
+        response.setContentLengthLong(count);
+        response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s\"", fileName));
+        H2IoThrottle throttle = H2IoThrottle.get(getServletContext());
+        boolean isThrottled = throttle.isLimited();
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+             OutputStream outputStream = response.getOutputStream()) {
+            if (!isThrottled && JETTY_OUTPUT.equals(outputStream.getClass().getName())) {
+                return JettyContent.send(outputStream, fileChannel, start, count);
+            }
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            long position = start, remaining = count;
+            while (remaining > 0) {
+                long size = Math.min(remaining, isThrottled ? H2IoThrottle.CHUNK_SIZE : TRANSFER_SIZE);
+                if (isThrottled) {
+                    throttle.acquire(size);
+                }
+                long transferred = fileChannel.transferTo(position, size, outputChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            outputStream.flush();
+            return count - remaining;
+        }
+    }
+
+    private static class JettyContent {
+        static long send(OutputStream outputStream, FileChannel fileChannel, long start, long count)
+                throws IOException {
+            HttpOutput httpOutput = (HttpOutput) outputStream;
+            if (count <= Integer.MAX_VALUE) {
+                httpOutput.sendContent(fileChannel.map(FileChannel.MapMode.READ_ONLY, start, count));
+                return count;
+            }
+            long position = start, remaining = count;
+            while (remaining > 0) {
+                long size = Math.min(remaining, Integer.MAX_VALUE);
+                httpOutput.write(fileChannel.map(FileChannel.MapMode.READ_ONLY, position, size));
+                position += size;
+                remaining -= size;
+            }
+            httpOutput.flush();
+            return count;
+        }
+    }
+
+    private boolean isIfRangeMatched(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        try {
+            return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return new long[0];
+        }
+        String spec = range.substring(6).trim();
+        int index = spec.indexOf('-');
+        if (index < 0) {
+            return new long[0];
+        }
+        try {
+            long start, end;
+            if (index == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, index));
+                end = index == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(index + 1));
+                end = Math.min(end, length - 1);
+            }
+            if (start > end || start >= length) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException ex) {
+            return new long[0];
         }
-        return resultsMap;
     }
 
     protected String getDatabaseUrl(String appsName) {
-        return "jdbc:h2:tcp://localhost/~/data/" + appsName;
+        return H2TenantRegistry.get(getServletContext()).getTcpUrl(appsName, null);
+    }
+
+    protected H2TenantRegistry.Lease leaseTenant(String appsName, String reason) throws IOException {
+        H2TenantRegistry.Lease lease = H2TenantRegistry.get(getServletContext()).lease(appsName, reason);
+        H2ConnectionPools.get(getServletContext()).evict(appsName);
+        return lease;
     }
 
     protected String[] getDatabaseNames() {
-        return new String[]{"shared", "cashbook", "materials", "project", "inventory", "purchase", "sales"};
+        return H2TenantRegistry.get(getServletContext()).getModules();
+    }
+
+    protected String getTenantDirectory(String appsName) {
+        Path path = H2TenantRegistry.get(getServletContext()).getTenantPath(appsName);
+        return getDirectory(path.getParent().toString(), appsName);
     }
 
     protected String getDirectory(String root, String appsName) {
@@ -92,27 +288,39 @@ public abstract class MasterHttpServlet extends HttpServlet {
         throw new NullPointerException(msg);
     }
 
+    protected void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            List<Path> pathList = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : pathList) {
+                Files.delete(path);
+            }
+        }
+    }
+
     protected String getDBFileNameByModule(String backupFolder, String appsName, String dbName) {
         String dir = getDirectory(backupFolder, appsName);
-        dir = getDirectory(dir, dateFormat.format(new Date()));
+        dir = getDirectory(dir, dateFormat.format(LocalDate.now()));
         return Paths.get(dir, dbName + ".zip").toString();
     }
 
-    protected String getDBFileName(String backupFolder, String appsName) {
+    protected String getManifestFileNameByModule(String backupFolder, String appsName, String dbName) {
         String dir = getDirectory(backupFolder, appsName);
-        dir = getDirectory(dir, dateFormat.format(new Date()));
-        return Paths.get(dir, appsName + ".zip").toString();
+        dir = getDirectory(dir, dateFormat.format(LocalDate.now()));
+        return Paths.get(dir, dbName + H2ChunkStore.MANIFEST_SUFFIX).toString();
     }
 
-    protected List<String> getDBFileList(String dir) throws IOException {
-        List<String> fileList = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(dir))) {
-            for (Path path : stream) {
-                if (Files.isRegularFile(path)) {
-                    fileList.add(path.toString().replace(dir, "").replace(File.separator, ""));
-                }
-            }
-        }
-        return fileList;
+    protected H2ChunkStore getChunkStore(String backupFolder, String appsName) {
+        int chunkSize = H2ContextListener.getInitParameter(getServletContext(), "backup.chunk.size", 256);
+        return new H2ChunkStore(Paths.get(getDirectory(backupFolder, appsName), "chunks"), chunkSize * 1024,
+                H2IoThrottle.get(getServletContext()));
+    }
+
+    protected String getDBFileName(String backupFolder, String appsName) {
+        String dir = getDirectory(backupFolder, appsName);
+        dir = getDirectory(dir, dateFormat.format(LocalDate.now()));
+        return Paths.get(dir, appsName + ".zip").toString();
     }
 }
@@ -0,0 +1,93 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2BackupChecksumTest {
+    private static final H2IoThrottle THROTTLE = new H2IoThrottle(0, 0, 0, 24);
+
+    @TempDir
+    Path directory;
+
+    private static H2BackupChecksum writeZip(Path file, String... names) throws IOException {
+        H2BackupChecksum.ChecksumOutputStream checksumStream = H2BackupChecksum.wrap(Files.newOutputStream(file));
+        try (ZipOutputStream zipStream = new ZipOutputStream(checksumStream)) {
+            for (String name : names) {
+                zipStream.putNextEntry(new ZipEntry(name));
+                zipStream.write(("data of " + name + " ").repeat(500).getBytes(StandardCharsets.UTF_8));
+                zipStream.closeEntry();
+            }
+        }
+        return H2BackupChecksum.write(file, checksumStream);
+    }
+
+    @Test
+    void writeAndVerify() throws IOException {
+        Path file = directory.resolve("acme.zip");
+        H2BackupChecksum checksum = writeZip(file, "project.mv.db", "account.mv.db");
+        assertEquals(Files.size(file), checksum.getSize());
+        assertEquals(64, checksum.getSha256().length());
+        assertTrue(Files.exists(H2BackupChecksum.getChecksumPath(file)));
+        assertEquals(checksum.getSha256(), H2BackupChecksum.readSha256(file));
+        H2BackupChecksum read = H2BackupChecksum.read(H2BackupChecksum.getChecksumPath(file));
+        assertEquals(checksum.getSha256(), read.getSha256());
+        assertEquals(checksum.getSize(), read.getSize());
+        assertEquals("2 entries, sha256 ok, " + checksum.getSize() + " bytes",
+                H2BackupChecksum.verify(file, THROTTLE));
+    }
+
+    @Test
+    void verifyWithoutManifest() throws IOException {
+        Path file = directory.resolve("acme.zip");
+        writeZip(file, "project.mv.db");
+        Files.delete(H2BackupChecksum.getChecksumPath(file));
+        assertNull(H2BackupChecksum.readSha256(file));
+        assertTrue(H2BackupChecksum.verify(file, THROTTLE).endsWith("(no checksum manifest)"));
+    }
+
+    @Test
+    void appendedBytesAreDetected() throws IOException {
+        Path file = directory.resolve("acme.zip");
+        writeZip(file, "project.mv.db");
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        IOException ex = assertThrows(IOException.class, () -> H2BackupChecksum.verify(file, THROTTLE));
+        assertTrue(ex.getMessage().startsWith("Backup checksum mismatch"), ex.getMessage());
+    }
+
+    @Test
+    void corruptEntryIsDetected() throws IOException {
+        Path file = directory.resolve("acme.zip");
+        writeZip(file, "project.mv.db");
+        byte[] data = Files.readAllBytes(file);
+        data[60] ^= 0x55;
+        Files.write(file, data);
+        IOException ex = assertThrows(IOException.class, () -> H2BackupChecksum.verify(file, THROTTLE));
+        assertFalse(ex.getMessage().contains("sha256 ok"));
+    }
+
+    @Test
+    void invalidManifestIsRejected() throws IOException {
+        Path file = directory.resolve("acme.zip");
+        writeZip(file, "project.mv.db");
+        Path checksumPath = H2BackupChecksum.getChecksumPath(file);
+        Files.writeString(checksumPath, "sha256 abc notanumber acme.zip\n");
+        assertThrows(IOException.class, () -> H2BackupChecksum.read(checksumPath));
+        assertNull(H2BackupChecksum.readSha256(file));
+        Files.writeString(checksumPath, "# header only\n");
+        assertThrows(IOException.class, () -> H2BackupChecksum.read(checksumPath));
+    }
+}
@@ -0,0 +1,187 @@
+package dcapture.h2.service;
+
+import org.h2.api.Interval;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2ChangeCaptureTest {
+    private static final String TABLE_SQL = "CREATE TABLE PUBLIC.ITEM(ID INT PRIMARY KEY, NAME VARCHAR(64), "
+            + "PRICE DECIMAL(10, 2), CREATED TIMESTAMP)";
+
+    private static Connection open(String name) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:" + name);
+    }
+
+    private static void execute(Connection connection, String... sqls) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static List<String> select(Connection connection, String sql) throws SQLException {
+        List<String> rowList = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder builder = new StringBuilder();
+                for (int index = 1; index <= columns; index++) {
+                    builder.append(resultSet.getString(index)).append('|');
+                }
+                rowList.add(builder.toString());
+            }
+        }
+        return rowList;
+    }
+
+    private static long replayJournal(Connection source, Connection target) throws SQLException, IOException {
+        H2ChangeCapture.Replay replay = new H2ChangeCapture.Replay(target);
+        long count = 0;
+        try (Statement statement = source.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT SCHEMA_NAME, TABLE_NAME, OP, DATA FROM "
+                     + H2ChangeCapture.JOURNAL + " ORDER BY ID")) {
+            while (resultSet.next()) {
+                replay.apply(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3).charAt(0),
+                        H2ChangeCapture.decodeRows(resultSet.getBytes(4)));
+                count += 1;
+            }
+            replay.finish();
+        } finally {
+            replay.close();
+        }
+        return count;
+    }
+
+    @Test
+    void valuesRoundTrip() throws SQLException, IOException {
+        Timestamp timestamp = Timestamp.valueOf("2024-02-29 10:15:30.123456789");
+        Object[] row = new Object[]{null, true, 42, (short) 7, 1L << 40, 2.5d, 1.25f, new BigDecimal("12.3400"),
+                "text ü", new byte[]{1, 2, 3}, timestamp, java.sql.Date.valueOf("2024-02-29"),
+                Time.valueOf("23:59:58"), LocalDate.of(2024, 2, 29), LocalDateTime.of(2024, 2, 29, 1, 2, 3, 4),
+                OffsetDateTime.of(2024, 2, 29, 1, 2, 3, 4, ZoneOffset.ofHours(5)), LocalTime.of(12, 30, 0, 5),
+                OffsetTime.of(12, 30, 0, 5, ZoneOffset.ofHoursMinutes(-3, -30)), UUID.randomUUID(),
+                new Object[]{1, "a", null}, Interval.ofDaysHoursMinutesSeconds(-1, -2, -3, -4),
+                java.time.Duration.ofSeconds(90)};
+        Object[] expected = row.clone();
+        expected[3] = 7;
+        H2ChangeCapture.Rows rows = H2ChangeCapture.decodeRows(H2ChangeCapture.encodeRows(123, null, row));
+        assertEquals(123, rows.columnHash);
+        assertNull(rows.oldRow);
+        assertArrayEquals(expected, rows.newRow);
+    }
+
+    @Test
+    void unsupportedValueIsRejected() {
+        SQLException ex = assertThrows(SQLException.class,
+                () -> H2ChangeCapture.encodeRows(0, null, new Object[]{new Thread()}));
+        assertTrue(ex.getMessage().contains("java.lang.Thread"), ex.getMessage());
+    }
+
+    @Test
+    void capturedChangesReplay() throws SQLException, IOException {
+        try (Connection source = open("cdc-source"); Connection target = open("cdc-target")) {
+            execute(source, TABLE_SQL, "CREATE TABLE PUBLIC.NOTE(TEXT VARCHAR(64))");
+            execute(target, TABLE_SQL, "CREATE TABLE PUBLIC.NOTE(TEXT VARCHAR(64))");
+            assertEquals(1, H2ChangeCapture.install(source));
+            execute(source, "INSERT INTO PUBLIC.ITEM VALUES (1, 'one', 1.50, TIMESTAMP '2024-01-01 10:00:00')",
+                    "INSERT INTO PUBLIC.ITEM VALUES (2, 'two', 2.50, NULL)",
+                    "INSERT INTO PUBLIC.ITEM VALUES (3, 'three', 3.50, NULL)",
+                    "UPDATE PUBLIC.ITEM SET NAME = 'uno', PRICE = 1.75 WHERE ID = 1",
+                    "UPDATE PUBLIC.ITEM SET ID = 20 WHERE ID = 2", "DELETE FROM PUBLIC.ITEM WHERE ID = 3",
+                    "INSERT INTO PUBLIC.NOTE VALUES ('a'), ('b'), ('a')");
+            assertEquals(6, replayJournal(source, target));
+            String items = "SELECT * FROM PUBLIC.ITEM ORDER BY ID";
+            assertEquals(select(source, items), select(target, items));
+            assertEquals(List.of(), select(target, "SELECT * FROM PUBLIC.NOTE"));
+        }
+    }
+
+    @Test
+    void overlappingReplayIsIdempotent() throws SQLException, IOException {
+        try (Connection source = open("cdc-overlap-source"); Connection target = open("cdc-overlap-target")) {
+            execute(source, TABLE_SQL);
+            execute(target, TABLE_SQL);
+            H2ChangeCapture.install(source);
+            execute(source, "INSERT INTO PUBLIC.ITEM VALUES (1, 'one', 1.50, NULL)",
+                    "INSERT INTO PUBLIC.ITEM VALUES (2, 'two', 2.50, NULL)",
+                    "UPDATE PUBLIC.ITEM SET ID = 3 WHERE ID = 2", "DELETE FROM PUBLIC.ITEM WHERE ID = 1",
+                    "INSERT INTO PUBLIC.ITEM VALUES (1, 'again', 4.50, NULL)");
+            replayJournal(source, target);
+            replayJournal(source, target);
+            String items = "SELECT * FROM PUBLIC.ITEM ORDER BY ID";
+            assertEquals(select(source, items), select(target, items));
+        }
+    }
+
+    @Test
+    void keylessTableIsNotCaptured() throws SQLException, IOException {
+        try (Connection source = open("cdc-keyless-source"); Connection target = open("cdc-keyless-target")) {
+            execute(source, TABLE_SQL, "CREATE TABLE PUBLIC.NOTE(TEXT VARCHAR(64))");
+            H2ChangeCapture.install(source);
+            execute(source, "ALTER TABLE PUBLIC.ITEM DROP PRIMARY KEY");
+            assertEquals(0, H2ChangeCapture.install(source));
+            execute(source, "INSERT INTO PUBLIC.ITEM VALUES (1, 'one', 1.50, NULL)");
+            assertEquals(List.of("0|"), select(source, "SELECT COUNT(*) FROM " + H2ChangeCapture.JOURNAL));
+            execute(target, TABLE_SQL.replace(" PRIMARY KEY", ""));
+            H2ChangeCapture.Replay replay = new H2ChangeCapture.Replay(target);
+            try {
+                SQLException ex = assertThrows(SQLException.class, () -> replay.apply("PUBLIC", "ITEM", 'I',
+                        H2ChangeCapture.decodeRows(H2ChangeCapture.encodeRows(0, null,
+                                new Object[]{1, "one", null, null}))));
+                assertTrue(ex.getMessage().contains("no primary key"), ex.getMessage());
+            } finally {
+                replay.close();
+            }
+        }
+    }
+
+    @Test
+    void changedColumnTypeIsRejected() throws SQLException {
+        try (Connection source = open("cdc-changed-source"); Connection target = open("cdc-changed-target")) {
+            execute(source, TABLE_SQL);
+            execute(target, TABLE_SQL.replace("NAME VARCHAR(64)", "NAME INT"));
+            H2ChangeCapture.install(source);
+            execute(source, "INSERT INTO PUBLIC.ITEM VALUES (1, '1', 1.50, NULL)");
+            SQLException ex = assertThrows(SQLException.class, () -> replayJournal(source, target));
+            assertTrue(ex.getMessage().contains("column names or types differ"), ex.getMessage());
+        }
+    }
+
+    @Test
+    void droppedColumnIsRejected() throws SQLException {
+        try (Connection source = open("cdc-dropped-source"); Connection target = open("cdc-dropped-target")) {
+            execute(source, TABLE_SQL);
+            execute(target, TABLE_SQL.replace(", CREATED TIMESTAMP", ""));
+            H2ChangeCapture.install(source);
+            execute(source, "INSERT INTO PUBLIC.ITEM VALUES (1, 'one', 1.50, NULL)");
+            SQLException ex = assertThrows(SQLException.class, () -> replayJournal(source, target));
+            assertTrue(ex.getMessage().contains("the table changed after the backup"), ex.getMessage());
+        }
+    }
+}
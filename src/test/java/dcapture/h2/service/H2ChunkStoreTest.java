@@ -0,0 +1,94 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2ChunkStoreTest {
+    private static final int CHUNK_SIZE = 1024;
+    private static final H2IoThrottle THROTTLE = new H2IoThrottle(0, 0, 0, 24);
+
+    @TempDir
+    Path backupFolder;
+
+    private static byte[] data(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private H2ChunkStore.Manifest write(H2ChunkStore chunkStore, String date, byte[] data) throws IOException {
+        H2ChunkStore.Manifest manifest = chunkStore.newManifest();
+        chunkStore.write(manifest, "project.mv.db", new ByteArrayInputStream(data));
+        Path manifestPath = Files.createDirectories(backupFolder.resolve(date))
+                .resolve("project" + H2ChunkStore.MANIFEST_SUFFIX);
+        chunkStore.writeManifest(manifest, manifestPath);
+        return manifest;
+    }
+
+    private List<Path> chunks() throws IOException {
+        try (Stream<Path> stream = Files.walk(backupFolder.resolve("chunks"))) {
+            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private void age() throws IOException {
+        FileTime fileTime = FileTime.fromMillis(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L);
+        for (Path chunkPath : chunks()) {
+            Files.setLastModifiedTime(chunkPath, fileTime);
+        }
+    }
+
+    @Test
+    void unchangedChunksAreStoredOnce() throws IOException {
+        H2ChunkStore chunkStore = new H2ChunkStore(backupFolder.resolve("chunks"), CHUNK_SIZE, THROTTLE);
+        byte[] first = data(1, 4 * CHUNK_SIZE + 100), second = first.clone();
+        second[CHUNK_SIZE + 5] ^= 1;
+        assertEquals(5, write(chunkStore, "2024-01-01", first).getStoredChunks());
+        H2ChunkStore.Manifest manifest = write(chunkStore, "2024-01-02", second);
+        assertEquals(5, manifest.getChunks());
+        assertEquals(1, manifest.getStoredChunks());
+        assertEquals(6, chunks().size());
+        Path restorePath = Files.createDirectories(backupFolder.resolve("restore"));
+        chunkStore.restore(chunkStore.readManifest(backupFolder.resolve("2024-01-02/project.manifest")),
+                restorePath, null);
+        assertArrayEquals(second, Files.readAllBytes(restorePath.resolve("project.mv.db")));
+    }
+
+    @Test
+    void unreferencedChunksAreCollected() throws IOException {
+        H2ChunkStore chunkStore = new H2ChunkStore(backupFolder.resolve("chunks"), CHUNK_SIZE, THROTTLE);
+        write(chunkStore, "2024-01-01", data(1, 3 * CHUNK_SIZE));
+        byte[] grown = Arrays.copyOf(data(1, 3 * CHUNK_SIZE), 4 * CHUNK_SIZE);
+        H2ChunkStore.Manifest manifest = write(chunkStore, "2024-01-02", grown);
+        assertEquals(4, chunks().size());
+        age();
+        chunkStore.collectGarbage(backupFolder);
+        assertEquals(4, chunks().size());
+        Files.delete(backupFolder.resolve("2024-01-02/project.manifest"));
+        write(chunkStore, "2024-01-03", data(2, CHUNK_SIZE));
+        String result = chunkStore.collectGarbage(backupFolder);
+        assertTrue(result.contains("1 unreferenced chunks deleted"), result);
+        assertEquals(4, chunks().size());
+        assertEquals(3L * CHUNK_SIZE, chunkStore.verify(chunkStore.readManifest(
+                backupFolder.resolve("2024-01-01/project.manifest"))));
+        assertEquals(CHUNK_SIZE, chunkStore.verify(chunkStore.readManifest(
+                backupFolder.resolve("2024-01-03/project.manifest"))));
+        assertThrows(IOException.class, () -> chunkStore.verify(manifest));
+    }
+}
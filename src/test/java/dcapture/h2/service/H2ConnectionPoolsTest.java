@@ -0,0 +1,109 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2ConnectionPoolsTest {
+    @TempDir
+    Path volume;
+    private H2TenantRegistry registry;
+    private H2ConnectionPools pools;
+
+    @BeforeEach
+    void openPools() throws IOException, SQLException {
+        Path tenantPath = Files.createDirectories(volume.resolve("acme"));
+        DriverManager.getConnection("jdbc:h2:" + tenantPath.resolve("shared"), H2ContextListener.DATABASE_USER,
+                H2ContextListener.DATABASE_PASSWORD).close();
+        registry = new H2TenantRegistry(List.of(volume), 0);
+        registry.scan();
+        pools = new H2ConnectionPools(registry, 4, 5, 1);
+    }
+
+    @AfterEach
+    void closePools() {
+        pools.close();
+    }
+
+    private static int select(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private boolean waitRetired(int count) throws InterruptedException {
+        for (int index = 0; index < 50; index++) {
+            if (pools.toJson().contains("\"retired\":" + count + ",")) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    @Test
+    void idlePoolIsClosedOnEvict() throws SQLException {
+        pools.getConnection("acme", "shared").close();
+        assertEquals(List.of("acme/shared"), pools.getKeys());
+        assertEquals(1, pools.evict("acme"));
+        assertTrue(pools.getKeys().isEmpty());
+        assertTrue(pools.toJson().contains("\"retired\":0,"), pools.toJson());
+        try (Connection connection = pools.getConnection("acme", "shared")) {
+            assertEquals(1, select(connection));
+        }
+    }
+
+    @Test
+    void borrowedPoolIsRetiredUntilReturned() throws SQLException, InterruptedException {
+        Connection connection = pools.getConnection("acme", "shared");
+        assertEquals(1, pools.evict("acme"));
+        assertTrue(pools.getKeys().isEmpty());
+        assertTrue(waitRetired(1), pools.toJson());
+        assertEquals(1, select(connection));
+        try (Connection other = pools.getConnection("acme", "shared")) {
+            assertEquals(1, select(other));
+        }
+        connection.close();
+        assertTrue(waitRetired(0), pools.toJson());
+    }
+
+    @Test
+    void pinnedConnectionIsClosedOnEvict() throws SQLException {
+        assertTrue(pools.pin("acme", "shared"));
+        assertFalse(pools.pin("acme", "shared"));
+        assertFalse(pools.evictKey("acme/shared"));
+        assertEquals(1, pools.evict("acme"));
+        assertTrue(pools.toJson().contains("\"retired\":0,"), pools.toJson());
+        assertTrue(pools.pin("acme", "shared"));
+    }
+
+    @Test
+    void leasedTenantIsRefused() throws IOException, SQLException {
+        try (H2TenantRegistry.Lease lease = registry.lease("acme", "restore")) {
+            SQLException ex = assertThrows(SQLException.class, () -> pools.getConnection("acme", "shared"));
+            assertTrue(ex.getMessage().contains("busy (restore)"), ex.getMessage());
+            lease.lockModules(volume.resolve("acme"));
+        }
+        try (Connection connection = pools.getConnection("acme", "shared")) {
+            assertEquals(1, select(connection));
+        }
+    }
+}
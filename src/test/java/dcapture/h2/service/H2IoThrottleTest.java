@@ -0,0 +1,69 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2IoThrottleTest {
+    private static final long RATE = 1024 * 1024;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double DELTA = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static long start(H2IoThrottle throttle) {
+        long now = System.nanoTime();
+        throttle.reserve(0, RATE, now);
+        return now;
+    }
+
+    @Test
+    void debtIsPaidAtTheRate() {
+        H2IoThrottle throttle = new H2IoThrottle(RATE, RATE, 0, 24);
+        long now = start(throttle);
+        assertEquals(SECOND, throttle.reserve(RATE, RATE, now), DELTA);
+        assertEquals(SECOND * 3 / 2, throttle.reserve(RATE / 2, RATE, now), DELTA);
+    }
+
+    @Test
+    void refillPaysTheDebt() {
+        H2IoThrottle throttle = new H2IoThrottle(RATE, RATE, 0, 24);
+        long now = start(throttle);
+        throttle.reserve(RATE, RATE, now);
+        assertEquals(0, throttle.reserve(RATE / 8, RATE, now + SECOND + SECOND / 4));
+    }
+
+    @Test
+    void idleTimeIsCappedAtTheBurst() {
+        H2IoThrottle throttle = new H2IoThrottle(RATE, RATE, 0, 24);
+        long now = start(throttle) + 60 * SECOND;
+        assertEquals(0, throttle.reserve(RATE / 4, RATE, now));
+        assertEquals(SECOND / 4, throttle.reserve(RATE / 4, RATE, now), DELTA);
+    }
+
+    @Test
+    void burstIsAtLeastOneChunk() {
+        long rate = 1024;
+        H2IoThrottle throttle = new H2IoThrottle(rate, rate, 0, 24);
+        long now = System.nanoTime();
+        throttle.reserve(0, rate, now);
+        now += 1000 * SECOND;
+        assertEquals(0, throttle.reserve(H2IoThrottle.CHUNK_SIZE, rate, now));
+        assertEquals(SECOND, throttle.reserve(rate, rate, now), DELTA);
+    }
+
+    @Test
+    void businessHoursSkipWeekendsAndWrapMidnight() {
+        H2IoThrottle day = new H2IoThrottle(RATE, 0, 8, 20);
+        assertTrue(day.isBusinessHours(LocalDateTime.of(2026, 3, 2, 8, 0)));
+        assertFalse(day.isBusinessHours(LocalDateTime.of(2026, 3, 2, 20, 0)));
+        assertFalse(day.isBusinessHours(LocalDateTime.of(2026, 3, 7, 10, 0)));
+        H2IoThrottle night = new H2IoThrottle(RATE, 0, 22, 6);
+        assertTrue(night.isBusinessHours(LocalDateTime.of(2026, 3, 2, 23, 0)));
+        assertTrue(night.isBusinessHours(LocalDateTime.of(2026, 3, 3, 5, 59)));
+        assertFalse(night.isBusinessHours(LocalDateTime.of(2026, 3, 3, 12, 0)));
+    }
+}
@@ -0,0 +1,80 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2JobSchedulerCronTest {
+
+    @Test
+    void parsesListsRangesAndSteps() {
+        H2JobScheduler.Cron cron = new H2JobScheduler.Cron("0,30 8-10/2 * * *");
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 2, 8, 0)));
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 2, 10, 30)));
+        assertFalse(cron.matches(LocalDateTime.of(2026, 3, 2, 9, 0)));
+        assertFalse(cron.matches(LocalDateTime.of(2026, 3, 2, 8, 15)));
+    }
+
+    @Test
+    void stepFromStartRunsToMax() {
+        H2JobScheduler.Cron cron = new H2JobScheduler.Cron("5/20 * * * *");
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 2, 1, 5)));
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 2, 1, 45)));
+        assertFalse(cron.matches(LocalDateTime.of(2026, 3, 2, 1, 0)));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> new H2JobScheduler.Cron("0 2 * *"));
+        assertThrows(IllegalArgumentException.class, () -> new H2JobScheduler.Cron("60 2 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new H2JobScheduler.Cron("0 2 0 * *"));
+        assertThrows(IllegalArgumentException.class, () -> new H2JobScheduler.Cron("0 x * * *"));
+    }
+
+    @Test
+    void sundayIsZeroOrSeven() {
+        LocalDateTime sunday = LocalDateTime.of(2026, 3, 1, 2, 0);
+        assertTrue(new H2JobScheduler.Cron("0 2 * * 0").matches(sunday));
+        assertTrue(new H2JobScheduler.Cron("0 2 * * 7").matches(sunday));
+        assertFalse(new H2JobScheduler.Cron("0 2 * * 1").matches(sunday));
+    }
+
+    @Test
+    void dayAndWeekDayMatchEitherWhenBothRestricted() {
+        H2JobScheduler.Cron cron = new H2JobScheduler.Cron("0 2 1,15 * 1");
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 1, 2, 0)));
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 15, 2, 0)));
+        assertTrue(cron.matches(LocalDateTime.of(2026, 3, 2, 2, 0)));
+        assertFalse(cron.matches(LocalDateTime.of(2026, 3, 3, 2, 0)));
+    }
+
+    @Test
+    void dayAndWeekDayMatchBothWhenOneIsAny() {
+        H2JobScheduler.Cron days = new H2JobScheduler.Cron("0 2 15 * *");
+        assertTrue(days.matches(LocalDateTime.of(2026, 3, 15, 2, 0)));
+        assertFalse(days.matches(LocalDateTime.of(2026, 3, 16, 2, 0)));
+        H2JobScheduler.Cron weekDays = new H2JobScheduler.Cron("0 2 * * 1-5");
+        assertTrue(weekDays.matches(LocalDateTime.of(2026, 3, 6, 2, 0)));
+        assertFalse(weekDays.matches(LocalDateTime.of(2026, 3, 7, 2, 0)));
+    }
+
+    @Test
+    void nextFindsFollowingMinute() {
+        H2JobScheduler.Cron cron = new H2JobScheduler.Cron("30 2 * * *");
+        assertEquals(LocalDateTime.of(2026, 3, 2, 2, 30), cron.next(LocalDateTime.of(2026, 3, 2, 1, 10, 45)));
+        assertEquals(LocalDateTime.of(2026, 3, 3, 2, 30), cron.next(LocalDateTime.of(2026, 3, 2, 2, 30)));
+    }
+
+    @Test
+    void nextCrossesMonthsAndYears() {
+        H2JobScheduler.Cron cron = new H2JobScheduler.Cron("0 0 29 2 *");
+        assertEquals(LocalDateTime.of(2028, 2, 29, 0, 0), cron.next(LocalDateTime.of(2026, 3, 1, 0, 0)));
+        assertNull(new H2JobScheduler.Cron("0 0 31 2 *").next(LocalDateTime.of(2026, 1, 1, 0, 0)));
+    }
+}
@@ -0,0 +1,79 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2MemoryGovernorTest {
+
+    private static H2MemoryGovernor.Sample sample(String name, int fileMb, long missRate) {
+        H2MemoryGovernor.Sample sample = new H2MemoryGovernor.Sample(Paths.get("data", "acme", name), null);
+        sample.fileMb = fileMb;
+        sample.missRate = missRate;
+        return sample;
+    }
+
+    private static int total(List<H2MemoryGovernor.Sample> sampleList) {
+        int total = 0;
+        for (H2MemoryGovernor.Sample sample : sampleList) {
+            total += sample.targetMb;
+        }
+        return total;
+    }
+
+    @Test
+    void emptyListIsIgnored() {
+        assertEquals(0, H2MemoryGovernor.allocate(new ArrayList<>(), 64, 4));
+    }
+
+    @Test
+    void minimumIsClampedToTheBudget() {
+        List<H2MemoryGovernor.Sample> sampleList = List.of(sample("a", 100, 0), sample("b", 100, 0),
+                sample("c", 100, 0));
+        H2MemoryGovernor.allocate(sampleList, 10, 8);
+        for (H2MemoryGovernor.Sample sample : sampleList) {
+            assertEquals(3, sample.targetMb);
+        }
+        assertTrue(total(sampleList) <= 10);
+    }
+
+    @Test
+    void minimumIsAtLeastOneMb() {
+        List<H2MemoryGovernor.Sample> sampleList = List.of(sample("a", 100, 0), sample("b", 100, 0));
+        assertEquals(2, H2MemoryGovernor.allocate(sampleList, 1, 4));
+        assertEquals(1, sampleList.get(0).targetMb);
+        assertEquals(1, sampleList.get(1).targetMb);
+    }
+
+    @Test
+    void smallDatabaseIsCappedAtItsFileSize() {
+        H2MemoryGovernor.Sample small = sample("small", 10, 0), large = sample("large", 200, 0);
+        H2MemoryGovernor.allocate(List.of(small, large), 100, 4);
+        assertEquals(11, small.targetMb);
+        assertEquals(89, large.targetMb);
+    }
+
+    @Test
+    void databaseSmallerThanMinimumKeepsTheMinimum() {
+        H2MemoryGovernor.Sample tiny = sample("tiny", 1, 50), large = sample("large", 200, 0);
+        H2MemoryGovernor.allocate(List.of(tiny, large), 64, 4);
+        assertEquals(4, tiny.targetMb);
+        assertEquals(60, large.targetMb);
+    }
+
+    @Test
+    void missesGetTheLargerShare() {
+        H2MemoryGovernor.Sample cold = sample("cold", 1000, 0), hot = sample("hot", 1000, 99);
+        List<H2MemoryGovernor.Sample> sampleList = List.of(cold, hot);
+        int allocated = H2MemoryGovernor.allocate(sampleList, 104, 2);
+        assertEquals(2, cold.targetMb);
+        assertEquals(101, hot.targetMb);
+        assertEquals(total(sampleList), allocated);
+        assertTrue(allocated <= 104);
+    }
+}
@@ -0,0 +1,193 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class H2ParallelZipOutputTest {
+    private static final long ZIP64_SIZE = 0xFFFFFFFFL + 1;
+    private static ExecutorService executor;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(size);
+        for (int index = 0; index < size; index++) {
+            data[index] = (byte) (random.nextInt(16) + 'a');
+        }
+        return data;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private Path write(Map<String, byte[]> entryMap, boolean isSizeKnown) throws IOException {
+        Path file = directory.resolve("backup.zip");
+        try (H2ParallelZipOutput zipOutput = new H2ParallelZipOutput(new BufferedOutputStream(
+                Files.newOutputStream(file)), executor, 4, Deflater.BEST_SPEED, 32 * 1024)) {
+            for (Map.Entry<String, byte[]> entry : entryMap.entrySet()) {
+                assertEquals(entry.getValue().length, zipOutput.writeEntry(entry.getKey(),
+                        new ByteArrayInputStream(entry.getValue()), isSizeKnown ? entry.getValue().length : -1));
+            }
+            zipOutput.finish();
+        }
+        return file;
+    }
+
+    private static Map<String, byte[]> entries() {
+        Map<String, byte[]> entryMap = new LinkedHashMap<>();
+        entryMap.put("empty.mv.db", new byte[0]);
+        entryMap.put("small.mv.db", data(100));
+        entryMap.put("block.mv.db", data(32 * 1024));
+        entryMap.put("blocks.mv.db", data(200 * 1024 + 7));
+        return entryMap;
+    }
+
+    private static void assertZipFile(Path file, Map<String, byte[]> entryMap) throws IOException {
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            assertEquals(entryMap.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> entry : entryMap.entrySet()) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+                assertEquals(entry.getValue().length, zipEntry.getSize());
+                assertEquals(crc(entry.getValue()), zipEntry.getCrc());
+                try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                    assertArrayEquals(entry.getValue(), inputStream.readAllBytes());
+                }
+            }
+        }
+    }
+
+    @Test
+    void zipFileReadsEntries() throws IOException {
+        Map<String, byte[]> entryMap = entries();
+        assertZipFile(write(entryMap, true), entryMap);
+    }
+
+    @Test
+    void zipInputStreamReadsEntries() throws IOException {
+        Map<String, byte[]> entryMap = entries();
+        try (ZipInputStream inputStream = new ZipInputStream(Files.newInputStream(write(entryMap, true)))) {
+            for (Map.Entry<String, byte[]> entry : entryMap.entrySet()) {
+                ZipEntry zipEntry = inputStream.getNextEntry();
+                assertEquals(entry.getKey(), zipEntry.getName());
+                assertArrayEquals(entry.getValue(), inputStream.readAllBytes());
+                assertEquals(entry.getValue().length, zipEntry.getSize());
+                assertEquals(crc(entry.getValue()), zipEntry.getCrc());
+            }
+            assertNull(inputStream.getNextEntry());
+        }
+    }
+
+    @Test
+    void unknownSizeUsesZip64Headers() throws IOException {
+        Map<String, byte[]> entryMap = entries();
+        Path file = write(entryMap, false);
+        assertZipFile(file, entryMap);
+        byte[] data = Files.readAllBytes(file);
+        assertEquals(0x0001, (data[30 + "empty.mv.db".length()] & 0xFF)
+                | (data[31 + "empty.mv.db".length()] & 0xFF) << 8);
+    }
+
+    @Test
+    void entryOverZip64Limit() throws IOException {
+        Path file = directory.resolve("large.zip");
+        try (H2ParallelZipOutput zipOutput = new H2ParallelZipOutput(new BufferedOutputStream(
+                Files.newOutputStream(file), 64 * 1024), executor, 4, Deflater.BEST_SPEED, 1024 * 1024)) {
+            assertEquals(ZIP64_SIZE, zipOutput.writeEntry("large.mv.db", new ZeroInputStream(ZIP64_SIZE),
+                    ZIP64_SIZE));
+            zipOutput.writeEntry("small.mv.db", new ByteArrayInputStream(data(100)), 100);
+            zipOutput.finish();
+        }
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            ZipEntry large = entries.nextElement(), small = entries.nextElement();
+            assertFalse(entries.hasMoreElements());
+            assertEquals(ZIP64_SIZE, large.getSize());
+            assertEquals(100, small.getSize());
+            try (InputStream inputStream = zipFile.getInputStream(small)) {
+                assertArrayEquals(data(100), inputStream.readAllBytes());
+            }
+        }
+        try (ZipInputStream inputStream = new ZipInputStream(Files.newInputStream(file))) {
+            assertEquals("large.mv.db", inputStream.getNextEntry().getName());
+            byte[] buffer = new byte[1024 * 1024];
+            long count = 0;
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                count += length;
+            }
+            assertEquals(ZIP64_SIZE, count);
+            assertEquals("small.mv.db", inputStream.getNextEntry().getName());
+            assertArrayEquals(data(100), inputStream.readAllBytes());
+            assertNull(inputStream.getNextEntry());
+        }
+    }
+
+    private static class ZeroInputStream extends InputStream {
+        private long remaining;
+
+        ZeroInputStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) {
+                return -1;
+            }
+            remaining -= 1;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(length, remaining);
+            Arrays.fill(data, offset, offset + count, (byte) 0);
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package dcapture.h2.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2SwapJournalTest {
+    @TempDir
+    Path volume;
+
+    private Path tenant(String name, String content) throws IOException {
+        Path path = Files.createDirectories(volume.resolve(name));
+        Files.writeString(path.resolve("project.mv.db"), content);
+        return path;
+    }
+
+    private static String read(Path directory) throws IOException {
+        return Files.readString(directory.resolve("project.mv.db"));
+    }
+
+    private Path previousPath() throws IOException {
+        List<String> lineList = Files.readAllLines(H2SwapJournal.getJournalPath(volume.resolve("acme")));
+        return volume.resolve(lineList.get(1).substring("previous ".length()));
+    }
+
+    @Test
+    void swapKeepsThePreviousDirectory() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        Path rollback = volume.resolve("acme.rollback");
+        tenant("acme.rollback", "older");
+        try (H2SwapJournal journal = H2SwapJournal.begin(target, source, rollback)) {
+            assertTrue(Files.exists(H2SwapJournal.getJournalPath(target)));
+            journal.swap();
+        }
+        assertEquals("new", read(target));
+        assertEquals("old", read(rollback));
+        assertFalse(Files.exists(source));
+        assertFalse(Files.exists(H2SwapJournal.getJournalPath(target)));
+        assertTrue(H2SwapJournal.recover(volume).isEmpty());
+    }
+
+    @Test
+    void unfinishedSwapBlocksTheNext() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        H2SwapJournal.begin(target, source, volume.resolve("acme.rollback"));
+        assertThrows(IOException.class, () -> H2SwapJournal.begin(target, source, volume.resolve("acme.rollback")));
+    }
+
+    @Test
+    void crashBeforeSwapRemovesTheStaging() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        H2SwapJournal.begin(target, source, volume.resolve("acme.rollback"));
+        assertEquals(1, H2SwapJournal.recover(volume).size());
+        assertEquals("old", read(target));
+        assertFalse(Files.exists(source));
+        assertFalse(Files.exists(volume.resolve("acme.rollback")));
+        assertFalse(Files.exists(H2SwapJournal.getJournalPath(target)));
+    }
+
+    @Test
+    void crashBetweenRenamesCompletesTheSwap() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        H2SwapJournal.begin(target, source, volume.resolve("acme.rollback"));
+        Files.move(target, previousPath(), StandardCopyOption.ATOMIC_MOVE);
+        H2SwapJournal.recover(volume);
+        assertEquals("new", read(target));
+        assertEquals("old", read(volume.resolve("acme.rollback")));
+        assertFalse(Files.exists(H2SwapJournal.getJournalPath(target)));
+    }
+
+    @Test
+    void crashWithoutStagingRollsBack() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        H2SwapJournal.begin(target, source, volume.resolve("acme.rollback"));
+        Files.move(target, previousPath(), StandardCopyOption.ATOMIC_MOVE);
+        H2SwapJournal.deleteDirectory(source);
+        H2SwapJournal.recover(volume);
+        assertEquals("old", read(target));
+        assertFalse(Files.exists(volume.resolve("acme.rollback")));
+        assertFalse(Files.exists(H2SwapJournal.getJournalPath(target)));
+    }
+
+    @Test
+    void crashBeforeRotationFinishesIt() throws IOException {
+        Path target = tenant("acme", "old"), source = tenant("acme.staging-1", "new");
+        tenant("acme.rollback", "older");
+        H2SwapJournal.begin(target, source, volume.resolve("acme.rollback")).swap();
+        H2SwapJournal.recover(volume);
+        assertEquals("new", read(target));
+        assertEquals("old", read(volume.resolve("acme.rollback")));
+        assertFalse(Files.exists(H2SwapJournal.getJournalPath(target)));
+    }
+}
@@ -97,16 +97,53 @@ DCaptureAppsDB.createDatabaseBackupEvent = function (evt) {
     remoteCall({
         url: "backup/create/" + name + "?type=offline",
         type:'GET',
-        contentType:'text',
+        contentType:'application/json',
         error: function (msg) {
             DCaptureAppsDB.showMessage(msg);
         },
-        success: function (msg) {
-            DCaptureAppsDB.showMessage(msg);
+        success: function (job) {
+            DCaptureAppsDB.pollJob(job);
         }
     });
 };
 
+DCaptureAppsDB.showJob = function (job) {
+    let text = job.type + ' ' + job.apps + ' : ' + job.state;
+    if (0 < job.bytesTotal) {
+        text = text + ' ' + Math.floor(100 * job.bytesDone / job.bytesTotal) + '%';
+    }
+    if (job.module) {
+        text = text + ' (' + job.module + ')';
+    }
+    if (0 <= job.eta) {
+        text = text + ', about ' + Math.ceil(job.eta / 1000) + ' seconds left';
+    }
+    if (job.message) {
+        text = text + '\n' + job.message;
+    }
+    DCaptureAppsDB.showMessage(text);
+};
+
+DCaptureAppsDB.pollJob = function (job) {
+    DCaptureAppsDB.showJob(job);
+    if ('QUEUED' !== job.state && 'RUNNING' !== job.state) {
+        return;
+    }
+    setTimeout(function () {
+        remoteCall({
+            url: "job/status/" + job.id,
+            type:'GET',
+            contentType:'application/json',
+            error: function (msg) {
+                DCaptureAppsDB.showMessage(msg);
+            },
+            success: function (current) {
+                DCaptureAppsDB.pollJob(current);
+            }
+        });
+    }, 1000);
+};
+
 DCaptureAppsDB.setBackupList = function (appsName, date, items) {
     if(0 === items.length) {
         DCaptureAppsDB.sharedDBLink.innerText = '';
@@ -183,12 +220,12 @@ DCaptureAppsDB.onDatabaseRestoreEvent = function (evt) {
     remoteCall({
         url: "restore/execute/" + name + "?date=" + date,
         type:'GET',
-        contentType:'text',
+        contentType:'application/json',
         error: function (msg) {
             DCaptureAppsDB.showMessage(msg);
         },
-        success: function (mg2) {
-            DCaptureAppsDB.showMessage(mg2);
+        success: function (job) {
+            DCaptureAppsDB.pollJob(job);
         }
     });
 };